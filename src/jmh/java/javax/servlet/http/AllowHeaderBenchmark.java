@@ -0,0 +1,207 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Compares doOptions(), which looks the Allow header up in a per-class
+ * cache, with the doOptions() body as it was before the cache, which
+ * walked the declared methods of the servlet class on every request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AllowHeaderBenchmark {
+
+    private static final String METHOD_DELETE = "DELETE";
+    private static final String METHOD_HEAD = "HEAD";
+    private static final String METHOD_GET = "GET";
+    private static final String METHOD_OPTIONS = "OPTIONS";
+    private static final String METHOD_POST = "POST";
+    private static final String METHOD_PUT = "PUT";
+    private static final String METHOD_TRACE = "TRACE";
+
+    private final HttpServlet servlet = new GetPostServlet();
+    private final NullHttpServletResponse response =
+        new NullHttpServletResponse();
+
+    @Benchmark
+    public String cachedDoOptions() throws ServletException, IOException {
+        servlet.doOptions(null, response);
+        return response.headerValue;
+    }
+
+    @Benchmark
+    public String reflectiveDoOptions() {
+        doOptions(servlet, response);
+        return response.headerValue;
+    }
+
+    /*
+     * HttpServlet.getAllDeclaredMethods() before the cache, unchanged.
+     */
+    private static Method[] getAllDeclaredMethods(Class<? extends HttpServlet> c) {
+
+        Class<?> clazz = c;
+        Method[] allMethods = null;
+
+        while (!clazz.equals(HttpServlet.class)) {
+            Method[] thisMethods = clazz.getDeclaredMethods();
+            if (allMethods != null && allMethods.length > 0) {
+                Method[] subClassMethods = allMethods;
+                allMethods =
+                    new Method[thisMethods.length + subClassMethods.length];
+                System.arraycopy(thisMethods, 0, allMethods, 0,
+                                 thisMethods.length);
+                System.arraycopy(subClassMethods, 0, allMethods, thisMethods.length,
+                                 subClassMethods.length);
+            } else {
+                allMethods = thisMethods;
+            }
+
+            clazz = clazz.getSuperclass();
+        }
+
+        return ((allMethods != null) ? allMethods : new Method[0]);
+    }
+
+    /*
+     * HttpServlet.doOptions() before the cache, unchanged except that the
+     * servlet is passed in instead of being this.
+     */
+    private static void doOptions(HttpServlet servlet, HttpServletResponse resp)
+    {
+        Method[] methods = getAllDeclaredMethods(servlet.getClass());
+
+        boolean ALLOW_GET = false;
+        boolean ALLOW_HEAD = false;
+        boolean ALLOW_POST = false;
+        boolean ALLOW_PUT = false;
+        boolean ALLOW_DELETE = false;
+        boolean ALLOW_TRACE = true;
+        boolean ALLOW_OPTIONS = true;
+
+        for (int i=0; i<methods.length; i++) {
+            String methodName = methods[i].getName();
+
+            if (methodName.equals("doGet")) {
+                ALLOW_GET = true;
+                ALLOW_HEAD = true;
+            } else if (methodName.equals("doPost")) {
+                ALLOW_POST = true;
+            } else if (methodName.equals("doPut")) {
+                ALLOW_PUT = true;
+            } else if (methodName.equals("doDelete")) {
+                ALLOW_DELETE = true;
+            }
+
+        }
+
+        // we know "allow" is not null as ALLOW_OPTIONS = true
+        // when this method is invoked
+        StringBuilder allow = new StringBuilder();
+        if (ALLOW_GET) {
+            allow.append(METHOD_GET);
+        }
+        if (ALLOW_HEAD) {
+            if (allow.length() > 0) {
+                allow.append(", ");
+            }
+            allow.append(METHOD_HEAD);
+        }
+        if (ALLOW_POST) {
+            if (allow.length() > 0) {
+                allow.append(", ");
+            }
+            allow.append(METHOD_POST);
+        }
+        if (ALLOW_PUT) {
+            if (allow.length() > 0) {
+                allow.append(", ");
+            }
+            allow.append(METHOD_PUT);
+        }
+        if (ALLOW_DELETE) {
+            if (allow.length() > 0) {
+                allow.append(", ");
+            }
+            allow.append(METHOD_DELETE);
+        }
+        if (ALLOW_TRACE) {
+            if (allow.length() > 0) {
+                allow.append(", ");
+            }
+            allow.append(METHOD_TRACE);
+        }
+        if (ALLOW_OPTIONS) {
+            if (allow.length() > 0) {
+                allow.append(", ");
+            }
+            allow.append(METHOD_OPTIONS);
+        }
+
+        resp.setHeader("Allow", allow.toString());
+    }
+
+
+    @SuppressWarnings("serial")
+    private static final class GetPostServlet extends HttpServlet {
+
+        @Override
+        protected void doGet(HttpServletRequest req,
+                             HttpServletResponse resp) { }
+
+        @Override
+        protected void doPost(HttpServletRequest req,
+                              HttpServletResponse resp) { }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/*
+ * Compares HttpSessionSerializer with writing the attribute map through a
+ * plain ObjectOutputStream, for a session mixing built-in kinds with
+ * Java-serialized values that share objects.  The serializer runs as
+ * constructed, with a codec registered for the application class, and
+ * with Deflate compression.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HttpSessionSerializerBenchmark {
+
+    @Param({"plain", "codec", "deflate"})
+    private String mode;
+
+    private HttpSessionSerializer serializer;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private Map<String, Object> attributes;
+    private byte[] serialized;
+    private byte[] objectStream;
+
+    @Setup
+    public void setUp() throws IOException {
+        serializer = new HttpSessionSerializer(null);
+        if (mode.equals("codec")) {
+            serializer.register(new AccountCodec());
+        } else if (mode.equals("deflate")) {
+            serializer.setCompressionLevel(Deflater.BEST_SPEED);
+        }
+
+        attributes = new LinkedHashMap<>();
+        attributes.put("user", "user-0001");
+        attributes.put("locale", "ja_JP");
+        attributes.put("visits", 42);
+        attributes.put("lastAccess", 1500000000000L);
+        attributes.put("admin", Boolean.FALSE);
+        attributes.put("token", new byte[32]);
+        List<String> cart = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            cart.add("item-" + i);
+        }
+        Map<String, Object> profile = new HashMap<>();
+        profile.put("name", "Duke");
+        profile.put("since", new Date(0));
+        profile.put("cart", cart);
+        attributes.put("cart", cart);
+        attributes.put("profile", profile);
+        attributes.put("created", new Date(0));
+        attributes.put("account", new Account("user-0001", "Duke", 0L));
+
+        serialized = writeSerializer();
+        objectStream = writeObjectStream();
+    }
+
+    @Benchmark
+    public byte[] writeSerializer() throws IOException {
+        out.reset();
+        serializer.writeAttributes(attributes, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeObjectStream() throws IOException {
+        out.reset();
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(attributes);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Map<String, Object> readSerializer() throws IOException {
+        return serializer.readAttributes(
+            new ByteArrayInputStream(serialized));
+    }
+
+    @Benchmark
+    public Object readObjectStream()
+            throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(objectStream))) {
+            return ois.readObject();
+        }
+    }
+
+
+    public static class Account implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+        private final String name;
+        private final long since;
+
+        public Account(String id, String name, long since) {
+            this.id = id;
+            this.name = name;
+            this.since = since;
+        }
+    }
+
+    private static class AccountCodec
+            implements HttpSessionAttributeCodec<Account> {
+
+        @Override
+        public Class<Account> getType() {
+            return Account.class;
+        }
+
+        @Override
+        public void encode(Account value, DataOutput out)
+                throws IOException {
+            out.writeUTF(value.id);
+            out.writeUTF(value.name);
+            out.writeLong(value.since);
+        }
+
+        @Override
+        public Account decode(DataInput in) throws IOException {
+            return new Account(in.readUTF(), in.readUTF(), in.readLong());
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import javax.servlet.ServletOutputStream;
+
+/*
+ * Response that only remembers the last header set, so that benchmarks
+ * measure the servlet rather than a container.
+ */
+// file private
+@SuppressWarnings("deprecation")
+final class NullHttpServletResponse implements HttpServletResponse {
+
+    String headerName;
+    String headerValue;
+    int status = SC_OK;
+
+    public void addCookie(Cookie cookie) { }
+
+    public boolean containsHeader(String name) {
+        return name.equalsIgnoreCase(headerName);
+    }
+
+    public String encodeURL(String url) {
+        return url;
+    }
+
+    public String encodeRedirectURL(String url) {
+        return url;
+    }
+
+    public String encodeUrl(String url) {
+        return url;
+    }
+
+    public String encodeRedirectUrl(String url) {
+        return url;
+    }
+
+    public void sendError(int sc, String msg) throws IOException {
+        status = sc;
+    }
+
+    public void sendError(int sc) throws IOException {
+        status = sc;
+    }
+
+    public void sendRedirect(String location) throws IOException { }
+
+    public void setDateHeader(String name, long date) {
+        setHeader(name, String.valueOf(date));
+    }
+
+    public void addDateHeader(String name, long date) {
+        setHeader(name, String.valueOf(date));
+    }
+
+    public void setHeader(String name, String value) {
+        headerName = name;
+        headerValue = value;
+    }
+
+    public void addHeader(String name, String value) {
+        setHeader(name, value);
+    }
+
+    public void setIntHeader(String name, int value) {
+        setHeader(name, String.valueOf(value));
+    }
+
+    public void addIntHeader(String name, int value) {
+        setHeader(name, String.valueOf(value));
+    }
+
+    public void setStatus(int sc) {
+        status = sc;
+    }
+
+    public void setStatus(int sc, String sm) {
+        status = sc;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getHeader(String name) {
+        return containsHeader(name) ? headerValue : null;
+    }
+
+    public Collection<String> getHeaders(String name) {
+        return containsHeader(name)
+            ? Collections.singletonList(headerValue)
+            : Collections.<String>emptyList();
+    }
+
+    public Collection<String> getHeaderNames() {
+        return headerName == null
+            ? Collections.<String>emptyList()
+            : Collections.singletonList(headerName);
+    }
+
+    public String getCharacterEncoding() {
+        return "ISO-8859-1";
+    }
+
+    public String getContentType() {
+        return null;
+    }
+
+    public ServletOutputStream getOutputStream() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    public PrintWriter getWriter() throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    public void setCharacterEncoding(String charset) { }
+
+    public void setContentLength(int len) { }
+
+    public void setContentLengthLong(long len) { }
+
+    public void setContentType(String type) { }
+
+    public void setBufferSize(int size) { }
+
+    public int getBufferSize() {
+        return 0;
+    }
+
+    public void flushBuffer() throws IOException { }
+
+    public void resetBuffer() { }
+
+    public boolean isCommitted() {
+        return false;
+    }
+
+    public void reset() {
+        headerName = null;
+        headerValue = null;
+        status = SC_OK;
+    }
+
+    public void setLocale(Locale loc) { }
+
+    public Locale getLocale() {
+        return Locale.getDefault();
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 型付けされたリクエスト属性のキーを表します。
+ *
+ * <p>キーは{@link #of}で名前と値の型を指定して作成し、通常は<code>static final</code>の定数として保持します。
+ * 属性の名前にはそれぞれ0から始まる連続した整数のスロットが割り当てられ、同じ名前のキーは常に同じスロットを使用します。
+ * サーブレットコンテナは{@link ServletRequest#getAttribute(AttributeKey)}などをオーバーライドし、
+ * スロットを添字とする配列に値を保存することで、名前のハッシュ値の計算や文字列の比較、キャストを省略することができます。
+ *
+ * <p>キーで設定した属性は同じ名前で{@link ServletRequest#getAttribute(String)}からも取得できます。
+ * 名前と型が等しいキーは{@link #equals}で等しいと判定されます。
+ *
+ * <p>スロットの割り当ては名前だけを保持し、型の{@link Class}は保持しないため、
+ * Webアプリケーションを再配備したり、複数のWebアプリケーションが同じ名前を異なる型で使用したりしても問題ありません。
+ * ただし、割り当てられたスロットが解放されることはないため、リクエストごとに異なる名前でキーを作成しないでください。
+ *
+ * @param <T> 属性の値の型
+ *
+ * @see ServletRequest#getAttribute(AttributeKey)
+ * @see ServletRequest#setAttribute(AttributeKey, Object)
+ *
+ * @since Servlet 4.0.1
+ */
+public final class AttributeKey<T> {
+
+    // Only names are registered, so that no webapp Class is pinned
+    private static final ConcurrentMap<String, Integer> slots =
+        new ConcurrentHashMap<>();
+    private static final AtomicInteger nextSlot = new AtomicInteger();
+
+    private final String name;
+    private final Class<T> type;
+    private final int slot;
+
+    private AttributeKey(String name, Class<T> type, int slot) {
+        this.name = name;
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /**
+     * 指定された名前と型のキーを返します。
+     *
+     * <p>その名前にまだスロットが割り当てられていない場合は新しいスロットを割り当てます。
+     * すでに割り当てられている場合は同じスロットを使用します。
+     *
+     * @param <T>   属性の値の型
+     * @param name  属性の名前
+     * @param type  属性の値の型
+     *
+     * @return  指定された名前と型のキー
+     *
+     * @throws IllegalArgumentException <code>name</code>か<code>type</code>が<code>null</code>の場合、
+     * または<code>type</code>がプリミティブ型の場合
+     */
+    public static <T> AttributeKey<T> of(String name, Class<T> type) {
+        if (name == null || type == null) {
+            throw new IllegalArgumentException("Name and type cannot be null");
+        }
+        if (type.isPrimitive()) {
+            throw new IllegalArgumentException("Type " + type.getName() +
+                " is primitive");
+        }
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = slots.computeIfAbsent(name,
+                n -> nextSlot.getAndIncrement());
+        }
+        return new AttributeKey<>(name, type, slot);
+    }
+
+    /**
+     * これまでに割り当てられたスロットの数を返します。
+     *
+     * <p>すべてのキーのスロットはこの値より小さくなります。
+     * 値は新しい名前のキーが作成されるたびに増加するため、配列の大きさを決めたあとに登録されたキーにも対応できるようにしてください。
+     *
+     * @return  割り当てられたスロットの数
+     */
+    public static int getSlotCount() {
+        return nextSlot.get();
+    }
+
+    /**
+     * 属性の名前を返します。
+     *
+     * @return  属性の名前
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 属性の値の型を返します。
+     *
+     * @return  属性の値の型
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * このキーに割り当てられたスロットを返します。
+     *
+     * @return  0以上{@link #getSlotCount}未満のスロット
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * 指定されたオブジェクトをこのキーの型にキャストします。
+     *
+     * @param value キャストするオブジェクト
+     *
+     * @return  キャストされたオブジェクト、<code>value</code>が<code>null</code>の場合は<code>null</code>
+     *
+     * @throws ClassCastException <code>value</code>がこのキーの型のインスタンスではない場合
+     */
+    public T cast(Object value) {
+        return type.cast(value);
+    }
+
+    /**
+     * 指定されたオブジェクトがこのキーと等しいかどうかを返します。
+     *
+     * <p>名前と型がどちらも等しい<code>AttributeKey</code>は等しいと判定されます。
+     *
+     * @param obj   比較するオブジェクト
+     *
+     * @return  等しい場合は<code>true</code>
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof AttributeKey)) {
+            return false;
+        }
+        AttributeKey<?> other = (AttributeKey<?>) obj;
+        return slot == other.slot && type == other.type;
+    }
+
+    /**
+     * このキーのハッシュコードを返します。
+     *
+     * @return  ハッシュコード
+     */
+    @Override
+    public int hashCode() {
+        return slot;
+    }
+
+    /**
+     * 属性の名前を返します。
+     *
+     * @return  {@link #getName}と同じ値
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
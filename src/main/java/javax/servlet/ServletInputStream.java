@@ -60,6 +60,7 @@ package javax.servlet;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * 一度に1行ずつデータを読み込む効率的なreadLineメソッドを含む、クライアントからのリクエストからバイナリデータを読み込むための入力ストリームを提供します。
@@ -77,6 +78,13 @@ import java.io.IOException;
 
 public abstract class ServletInputStream extends InputStream {
 
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /*
+     * Buffer reused by read(ByteBuffer) and readLine(ByteBuffer) for
+     * buffers without an accessible array.  Allocated on first use.
+     */
+    private byte[] readBuffer;
 
 
     /**
@@ -95,6 +103,9 @@ public abstract class ServletInputStream extends InputStream {
      *
      * <p>このメソッドは最大バイト数を読み取る前に入力ストリームの終端に達した場合は-1を返します。
      *
+     * <p>ストリームが内部のバッファに保持しているデータは{@link #readBufferedLine}でまとめて読み込み、
+     * それ以外は<code>read()</code>で1バイトずつ読み込みます。
+     *
      *
      *
      * @param b 		データが読み込まれるバイトの配列
@@ -115,10 +126,23 @@ public abstract class ServletInputStream extends InputStream {
 	}
 	int count = 0, c;
 
-	while ((c = read()) != -1) {
+	while (count < len) {
+	    // take whatever the stream already holds in one copy
+	    int n = readBufferedLine(b, off, len - count);
+	    if (n > 0) {
+		off += n;
+		count += n;
+		if (b[off - 1] == '\n') {
+		    break;
+		}
+		continue;
+	    }
+	    if ((c = read()) == -1) {
+		break;
+	    }
 	    b[off++] = (byte)c;
 	    count++;
-	    if (c == '\n' || count == len) {
+	    if (c == '\n') {
 		break;
 	    }
 	}
@@ -126,6 +150,135 @@ public abstract class ServletInputStream extends InputStream {
     }
 
 
+    /**
+     * ストリームがすでに内部のバッファに保持しているデータを、改行文字まで配列に読み込みます。
+     * {@link #readLine(byte[], int, int)}と{@link #readLine(ByteBuffer)}は、このメソッドで読み込めるデータを1バイトずつではなくまとめて読み込みます。
+     *
+     * <p>このメソッドはブロックしてはならず、改行文字より後のデータを読み込んではいけません。
+     * 独自の読み込みバッファを持つサーブレットコンテナは、このメソッドをオーバーライドしてバッファの中で改行文字を探し、その位置までをまとめてコピーすることができます。
+     * 読み込んだデータは<code>read()</code>で読み込んだ場合と同様に消費されます。
+     *
+     * @implSpec デフォルト実装は何も読み込まずに0を返します。
+     * この場合、<code>readLine</code>は{@link #read()}で1バイトずつ読み込みます。
+     *
+     * @param b 		データが読み込まれるバイトの配列
+     *
+     * @param off 		このメソッドが読み込みを開始する位置
+     *
+     * @param len		読み込む最大バイト数
+     *
+     * @return			読み込まれたバイト数(改行文字を含む)、すぐに読み込めるデータがない場合は0
+     *
+     * @exception IOException	I/O例外が発生した
+     *
+     * @since Servlet 4.0.1
+     */
+    protected int readBufferedLine(byte[] b, int off, int len)
+        throws IOException
+    {
+        return 0;
+    }
+
+
+    /**
+     * 入力ストリームを一度に1行読み込み、読み込んだ行を指定されたバッファの部分ビューとして返します。
+     *
+     * <p>行のデータはバッファの現在の位置から書き込まれ、バッファの位置は読み込んだバイト数だけ進みます。
+     * 返される<code>ByteBuffer</code>は{@link ByteBuffer#slice}で作成された、読み込んだ行(改行文字を含む)だけを含むビューで、
+     * データはコピーされません。
+     * 行がバッファの残りよりも長い場合は、バッファがいっぱいになるまで読み込みます。
+     *
+     * @param dst   データが読み込まれるバッファ
+     *
+     * @return  読み込んだ行を含む<code>ByteBuffer</code>、ストリームの終端に達した場合は<code>null</code>
+     *
+     * @exception IOException	I/O例外が発生した
+     *
+     * @since Servlet 4.0.1
+     */
+    public ByteBuffer readLine(ByteBuffer dst) throws IOException {
+        int count;
+        if (dst.hasArray()) {
+            count = readLine(dst.array(), dst.arrayOffset() + dst.position(),
+                             dst.remaining());
+        } else {
+            // copy through the reused read buffer, one line at most
+            if (readBuffer == null) {
+                readBuffer = new byte[READ_BUFFER_SIZE];
+            }
+            byte[] chunk = readBuffer;
+            ByteBuffer view = dst.duplicate();
+            count = 0;
+            while (view.hasRemaining()) {
+                int n = readLine(chunk, 0, Math.min(view.remaining(),
+                                                    chunk.length));
+                if (n <= 0) {
+                    break;
+                }
+                view.put(chunk, 0, n);
+                count += n;
+                if (chunk[n - 1] == '\n') {
+                    break;
+                }
+            }
+            if (count == 0 && dst.hasRemaining()) {
+                count = -1;
+            }
+        }
+
+        if (count == -1) {
+            return null;
+        }
+        ByteBuffer line = dst.slice();
+        line.limit(count);
+        dst.position(dst.position() + count);
+        return line;
+    }
+
+
+    /**
+     * 入力ストリームからバッファの残りの領域にデータを読み込みます。
+     *
+     * <p>読み込んだバイトはバッファの現在の位置から書き込まれ、バッファの位置は読み込んだバイト数だけ進みます。
+     * サーブレットコンテナはこのメソッドをオーバーライドして、ダイレクトバッファにコピーせずに読み込むことができます。
+     *
+     * @implSpec デフォルト実装は、バッファが配列を持つ場合はその配列に<code>read(byte[], int, int)</code>で直接読み込みます。
+     * そうでない場合はこのストリームで再利用されるバッファに一度だけ読み込み、バッファにコピーします。
+     *
+     * @param dst   データが読み込まれるバッファ
+     *
+     * @return  読み込まれた実際のバイト数、ストリームの終端に達した場合は-1
+     *
+     * @exception IOException	I/O例外が発生した
+     *
+     * @since Servlet 4.0.1
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        int remaining = dst.remaining();
+        if (remaining == 0) {
+            return 0;
+        }
+
+        int n;
+        if (dst.hasArray()) {
+            n = read(dst.array(), dst.arrayOffset() + dst.position(),
+                     remaining);
+            if (n > 0) {
+                dst.position(dst.position() + n);
+            }
+        } else {
+            if (readBuffer == null) {
+                readBuffer = new byte[READ_BUFFER_SIZE];
+            }
+            n = read(readBuffer, 0, Math.min(remaining, readBuffer.length));
+            if (n > 0) {
+                dst.put(readBuffer, 0, n);
+            }
+        }
+        return n;
+    }
+
+
     /**
      * ストリームのすべてのデータが読み取られた場合はtrueを返し、そうでない場合はfalseを返します。
      *
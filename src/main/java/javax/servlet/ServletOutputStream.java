@@ -61,6 +61,11 @@ package javax.servlet;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.io.CharConversionException;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
 
@@ -81,6 +86,32 @@ public abstract class ServletOutputStream extends OutputStream  {
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
 
+    private static final int PRINT_BUFFER_SIZE = 512;
+
+    // "-9223372036854775808" is the longest decimal representation
+    private static final int MAX_DECIMAL_LENGTH = 20;
+
+    private static final String VALUE_TRUE = lStrings.getString("value.true");
+    private static final String VALUE_FALSE = lStrings.getString("value.false");
+
+    /*
+     * Scratch buffer used by print(String) to hand the encoded bytes to
+     * write(byte[], int, int) in chunks instead of one write(int) call per
+     * character.  Allocated on first use.
+     */
+    private byte[] printBuffer;
+
+    private Charset printCharset = StandardCharsets.ISO_8859_1;
+
+    private static final int TRANSFER_BUFFER_SIZE = 8192;
+
+    /*
+     * Buffer reused by the default transferFrom and write(ByteBuffer)
+     * implementations.
+     * Allocated on first use.
+     */
+    private ByteBuffer transferBuffer;
+
 
     
     /**
@@ -90,6 +121,40 @@ public abstract class ServletOutputStream extends OutputStream  {
     protected ServletOutputStream() { }
 
 
+    /**
+     * <code>print</code>メソッドと<code>println</code>メソッドが文字をバイトに変換するために使用する文字セットを設定します。
+     *
+     * <p>デフォルトはISO-8859-1で、ISO-8859-1で表現できない文字を書き込もうとすると<code>CharConversionException</code>がスローされます。
+     * それ以外の文字セットを設定した場合、表現できない文字はその文字セットの置換バイトに変換されます。
+     *
+     * <p>この設定は{@link ServletResponse#setCharacterEncoding}などで設定されるレスポンスの文字エンコーディングには影響しません。
+     *
+     * @param charset   <code>print</code>メソッドで使用する文字セット
+     *
+     * @throws NullPointerException <code>charset</code>が<code>null</code>の場合
+     *
+     * @since Servlet 4.0.1
+     */
+    public void setPrintCharset(Charset charset) {
+        if (charset == null) {
+            throw new NullPointerException();
+        }
+        printCharset = charset;
+    }
+
+
+    /**
+     * <code>print</code>メソッドと<code>println</code>メソッドが使用する文字セットを返します。
+     *
+     * @return <code>print</code>メソッドで使用する文字セット
+     *
+     * @since Servlet 4.0.1
+     */
+    public Charset getPrintCharset() {
+        return printCharset;
+    }
+
+
     /**
      * 復帰改行(CRFL)を使用せずにクライアントに<code>String</code>を書き込みます。
      *
@@ -102,6 +167,28 @@ public abstract class ServletOutputStream extends OutputStream  {
 
     public void print(String s) throws IOException {
         if (s==null) s="null";
+        if (printCharset.equals(StandardCharsets.ISO_8859_1)) {
+            printLatin1(s);
+        } else if (printCharset.equals(StandardCharsets.UTF_8)) {
+            printUtf8(s);
+        } else {
+            byte[] b = s.getBytes(printCharset);
+            write(b, 0, b.length);
+        }
+    }
+
+
+    private byte[] getPrintBuffer() {
+        if (printBuffer == null) {
+            printBuffer = new byte[PRINT_BUFFER_SIZE];
+        }
+        return printBuffer;
+    }
+
+
+    private void printLatin1(String s) throws IOException {
+        byte[] buf = getPrintBuffer();
+        int pos = 0;
         int len = s.length();
         for (int i = 0; i < len; i++) {
             char c = s.charAt (i);
@@ -113,13 +200,64 @@ public abstract class ServletOutputStream extends OutputStream  {
             // streams properly encode their output.
             //
             if ((c & 0xff00) != 0) {        // high order byte must be zero
+                // write out what precedes the offending character
+                if (pos > 0) {
+                    write(buf, 0, pos);
+                }
                 String errMsg = lStrings.getString("err.not_iso8859_1");
                 Object[] errArgs = new Object[1];
                 errArgs[0] = Character.valueOf(c);
                 errMsg = MessageFormat.format(errMsg, errArgs);
                 throw new CharConversionException(errMsg);
             }
-            write (c);
+            if (pos == buf.length) {
+                write(buf, 0, pos);
+                pos = 0;
+            }
+            buf[pos++] = (byte) c;
+        }
+        if (pos > 0) {
+            write(buf, 0, pos);
+        }
+    }
+
+
+    private void printUtf8(String s) throws IOException {
+        byte[] buf = getPrintBuffer();
+        int pos = 0;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+
+            // room for the longest (4 byte) sequence
+            if (pos > buf.length - 4) {
+                write(buf, 0, pos);
+                pos = 0;
+            }
+
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xc0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[pos++] = (byte) (0xf0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, same replacement as String.getBytes
+                buf[pos++] = (byte) '?';
+            } else {
+                buf[pos++] = (byte) (0xe0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        if (pos > 0) {
+            write(buf, 0, pos);
         }
     }
 
@@ -135,13 +273,7 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void print(boolean b) throws IOException {
-        String msg;
-        if (b) {
-            msg = lStrings.getString("value.true");
-        } else {
-            msg = lStrings.getString("value.false");
-        }
-        print(msg);
+        print(b ? VALUE_TRUE : VALUE_FALSE);
     }
 
 
@@ -172,7 +304,7 @@ public abstract class ServletOutputStream extends OutputStream  {
      */  
 
     public void print(int i) throws IOException {
-        print(String.valueOf(i));
+        printDecimal(i);
     }
 
 
@@ -189,7 +321,7 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void print(long l) throws IOException {
-        print(String.valueOf(l));
+        printDecimal(l);
     }
 
 
@@ -197,6 +329,9 @@ public abstract class ServletOutputStream extends OutputStream  {
     /**
      * 復帰改行(CRFL)を最後に使用せずにクライアントに<code>float</code>値を書き込みます。
      *
+     * <p>0ではなく絶対値が10<sup>7</sup>未満の整数値だけは、中間の<code>String</code>を作成せずに書き込まれます。
+     * それ以外の値は{@link String#valueOf(float)}で変換してから書き込まれます。
+     *
      * @param f                       クライアントに送る<code>float</code>値
      *
      * @exception IOException         I/O例外が発生した
@@ -205,13 +340,21 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void print(float f) throws IOException {
-        print(String.valueOf(f));
+        // Whole numbers below 10^7 print as "<digits>.0", see Double.toString
+        if (f == (long) f && f != 0 && Math.abs(f) < 1.0e7f) {
+            printDecimal((long) f, true);
+        } else {
+            print(String.valueOf(f));
+        }
     }
 
 
 
     /**
      * 復帰改行(CRFL)を最後に使用せずにクライアントに<code>double</code>値を書き込みます。
+     *
+     * <p>0ではなく絶対値が10<sup>7</sup>未満の整数値だけは、中間の<code>String</code>を作成せずに書き込まれます。
+     * それ以外の値は{@link String#valueOf(double)}で変換してから書き込まれます。
      * 
      * @param d                       クライアントに送る<code>double</code>値
      *
@@ -220,7 +363,53 @@ public abstract class ServletOutputStream extends OutputStream  {
      */
 
     public void print(double d) throws IOException {
-        print(String.valueOf(d));
+        // Whole numbers below 10^7 print as "<digits>.0", see Double.toString
+        if (d == (long) d && d != 0 && Math.abs(d) < 1.0e7) {
+            printDecimal((long) d, true);
+        } else {
+            print(String.valueOf(d));
+        }
+    }
+
+
+
+    private void printDecimal(long v) throws IOException {
+        printDecimal(v, false);
+    }
+
+
+    /*
+     * Formats v straight into the print buffer without creating a String.
+     * Digits are ASCII, so this is only done for the charsets print(String)
+     * encodes itself.
+     */
+    private void printDecimal(long v, boolean fraction) throws IOException {
+        if (!printCharset.equals(StandardCharsets.ISO_8859_1)
+                && !printCharset.equals(StandardCharsets.UTF_8)) {
+            print(fraction ? String.valueOf((double) v) : String.valueOf(v));
+            return;
+        }
+
+        byte[] buf = getPrintBuffer();
+        int end = MAX_DECIMAL_LENGTH;
+        int pos = end;
+        boolean negative = v < 0;
+        // work on the negative value so that Long.MIN_VALUE needs no special case
+        if (!negative) {
+            v = -v;
+        }
+        do {
+            buf[--pos] = (byte) ('0' - (v % 10));
+            v /= 10;
+        } while (v != 0);
+        if (negative) {
+            buf[--pos] = '-';
+        }
+        if (fraction) {
+            buf[end++] = '.';
+            buf[end++] = '0';
+        }
+        write(buf, pos, end - pos);
     }
 
 
@@ -352,6 +541,169 @@ public abstract class ServletOutputStream extends OutputStream  {
         println();
     }
 
+    /**
+     * バッファの残りのバイトをすべてクライアントに書き込みます。
+     *
+     * <p>このメソッドから戻った時、バッファの位置はリミットと等しくなります。
+     * サーブレットコンテナはこのメソッドをオーバーライドして、ダイレクトバッファをコピーせずに書き込むことができます。
+     *
+     * @implSpec デフォルト実装は、バッファが配列を持つ場合はその配列を<code>write(byte[], int, int)</code>で直接書き込みます。
+     * そうでない場合はこのストリームで再利用されるバッファにコピーしながら書き込みます。
+     *
+     * @param src   書き込むデータを含むバッファ
+     *
+     * @exception IOException   I/O例外が発生した
+     *
+     * @since Servlet 4.0.1
+     */
+    public void write(ByteBuffer src) throws IOException {
+        int remaining = src.remaining();
+        if (src.hasArray()) {
+            write(src.array(), src.arrayOffset() + src.position(), remaining);
+            src.position(src.limit());
+            return;
+        }
+
+        byte[] buf = getTransferBuffer().array();
+        while (remaining > 0) {
+            int n = Math.min(remaining, buf.length);
+            src.get(buf, 0, n);
+            write(buf, 0, n);
+            remaining -= n;
+        }
+    }
+
+
+    /**
+     * 複数のバッファの残りのバイトを、配列の順にすべてクライアントに書き込みます。
+     *
+     * <p>サーブレットコンテナはこのメソッドをオーバーライドして、複数のバッファを一度の書き込み操作で送信することができます。
+     *
+     * @implSpec デフォルト実装は各バッファについて{@link #write(ByteBuffer)}を呼び出します。
+     *
+     * @param srcs  書き込むデータを含むバッファの配列
+     *
+     * @exception IOException   I/O例外が発生した
+     *
+     * @since Servlet 4.0.1
+     */
+    public void write(ByteBuffer[] srcs) throws IOException {
+        for (ByteBuffer src : srcs) {
+            write(src);
+        }
+    }
+
+
+    /**
+     * ファイルの指定された範囲をクライアントに書き込みます。
+     *
+     * <p>サーブレットコンテナはこのメソッドをオーバーライドして、
+     * {@link FileChannel#transferTo}などを使用したヒープを経由しない転送を実装することができます。
+     * チャネルの位置は変更されません。
+     *
+     * @implSpec デフォルト実装はこのストリームで再利用されるバッファにファイルの内容を読み込み、
+     * <code>write(byte[], int, int)</code>で書き込むことを繰り返します。
+     *
+     * @param channel   書き込むデータを含むファイルのチャネル
+     *
+     * @param position  書き込むデータのファイル内での開始位置
+     *
+     * @param count     書き込むバイト数
+     *
+     * @exception IOException   I/O例外が発生したか、指定された範囲を読み込む前にファイルの終端に達した
+     *
+     * @exception IllegalArgumentException <code>position</code>か<code>count</code>が負の値の場合
+     *
+     * @since Servlet 4.0.1
+     */
+    public void transferFrom(FileChannel channel, long position, long count)
+        throws IOException
+    {
+        checkTransferArguments(position, count);
+        while (count > 0) {
+            int n = readTransferBuffer(channel, position, count);
+            write(transferBuffer.array(), 0, n);
+            position += n;
+            count -= n;
+        }
+    }
+
+
+    /**
+     * ブロックせずに書き込むことができる間だけ、ファイルの指定された範囲をクライアントに書き込み、書き込んだバイト数を返します。
+     *
+     * <p>このメソッドはノンブロッキングI/Oで使用します。
+     * {@link #isReady}が<code>false</code>を返した時点で書き込みを中断して戻るので、
+     * 戻り値が<code>count</code>より小さい場合は{@link WriteListener#onWritePossible}が呼び出された後に残りの範囲で再度呼び出してください。
+     *
+     * @implSpec デフォルト実装は{@link #isReady}が<code>true</code>を返す間、
+     * このストリームで再利用されるバッファにファイルの内容を読み込み、<code>write(byte[], int, int)</code>で書き込むことを繰り返します。
+     *
+     * @param channel   書き込むデータを含むファイルのチャネル
+     *
+     * @param position  書き込むデータのファイル内での開始位置
+     *
+     * @param count     書き込む最大バイト数
+     *
+     * @return 実際に書き込んだバイト数
+     *
+     * @exception IOException   I/O例外が発生したか、指定された範囲を読み込む前にファイルの終端に達した
+     *
+     * @exception IllegalArgumentException <code>position</code>か<code>count</code>が負の値の場合
+     *
+     * @since Servlet 4.0.1
+     */
+    public long transferFromNonBlocking(FileChannel channel, long position,
+                                        long count)
+        throws IOException
+    {
+        checkTransferArguments(position, count);
+        long written = 0;
+        while (written < count && isReady()) {
+            int n = readTransferBuffer(channel, position + written,
+                                       count - written);
+            write(transferBuffer.array(), 0, n);
+            written += n;
+        }
+        return written;
+    }
+
+
+    private static void checkTransferArguments(long position, long count) {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+
+    private ByteBuffer getTransferBuffer() {
+        if (transferBuffer == null) {
+            transferBuffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        }
+        return transferBuffer;
+    }
+
+
+    /*
+     * Fills the transfer buffer from the channel at the given position,
+     * without moving the channel's own position.
+     */
+    private int readTransferBuffer(FileChannel channel, long position,
+                                   long count)
+        throws IOException
+    {
+        getTransferBuffer().clear();
+        if (count < transferBuffer.capacity()) {
+            transferBuffer.limit((int) count);
+        }
+        int n = channel.read(transferBuffer, position);
+        if (n < 0) {
+            throw new EOFException();
+        }
+        return n;
+    }
+
+
     /**
      * このメソッドはブロックせずにデータを書き込むことができるかどうかを判断するために使用できます。
      *
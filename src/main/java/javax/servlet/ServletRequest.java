@@ -322,6 +322,59 @@ public interface ServletRequest {
      * @param name 削除する属性の名前を示す <code>String</code>
      */
     public void removeAttribute(String name);
+
+    /**
+     * 指定されたキーの属性の値を返します。指定されたキーの属性が存在しない場合は<code>null</code>を返します。
+     *
+     * <p>{@link #getAttribute(String)}と同じですが、サーブレットコンテナはキーの{@link AttributeKey#getSlot スロット}を使用して、
+     * 名前による検索とキャストを省略することができます。
+     *
+     * @implSpec デフォルト実装は<code>key.cast(getAttribute(key.getName()))</code>を返します。
+     *
+     * @param <T> 属性の値の型
+     * @param key 属性のキー
+     *
+     * @return 属性の値、属性が存在しない場合は<code>null</code>
+     *
+     * @throws ClassCastException 同じ名前で{@link #setAttribute(String, Object)}によってキーの型ではない値が設定されている場合
+     *
+     * @since Servlet 4.0.1
+     */
+    default public <T> T getAttribute(AttributeKey<T> key) {
+        return key.cast(getAttribute(key.getName()));
+    }
+
+    /**
+     * 指定されたキーでこのリクエストに属性を保存します。
+     *
+     * <p>{@link #setAttribute(String, Object)}と同じですが、サーブレットコンテナはキーの{@link AttributeKey#getSlot スロット}を使用して、
+     * 名前による検索を省略することができます。
+     * 値として<code>null</code>が渡された場合、{@link #removeAttribute(AttributeKey)}を呼び出されたのと同じ効果を及ぼします。
+     *
+     * @implSpec デフォルト実装は<code>setAttribute(key.getName(), value)</code>を呼び出します。
+     *
+     * @param <T>   属性の値の型
+     * @param key   属性のキー
+     * @param value 保存する値
+     *
+     * @since Servlet 4.0.1
+     */
+    default public <T> void setAttribute(AttributeKey<T> key, T value) {
+        setAttribute(key.getName(), value);
+    }
+
+    /**
+     * 指定されたキーの属性をこのリクエストから削除します。
+     *
+     * @implSpec デフォルト実装は<code>removeAttribute(key.getName())</code>を呼び出します。
+     *
+     * @param key 削除する属性のキー
+     *
+     * @since Servlet 4.0.1
+     */
+    default public void removeAttribute(AttributeKey<?> key) {
+        removeAttribute(key.getName());
+    }
     
     /**
      * Accept-Languageヘッダーの値からクライアントがコンテンツを受け入れる優先の<code>Locale</code>(ロケール、地域、言語)を返します。
@@ -77,6 +77,33 @@ import java.util.Map;
 
 public class ServletRequestWrapper implements ServletRequest {
 
+    /*
+     * Whether a wrapper class overrides any of the attribute accessors.
+     * The AttributeKey variants skip wrappers for which this is false and
+     * call the first request down the chain that may answer differently.
+     * A wrapper that overrides getRequest() is never skipped, so that
+     * skipping it reaches the same request as delegating through it would.
+     */
+    private static final ClassValue<Boolean> ATTRIBUTE_OVERRIDES =
+        new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                Class<?> base = ServletRequestWrapper.class;
+                return isOverridden(type, base, "getRequest")
+                    || isOverridden(type, base, "getAttribute", String.class)
+                    || isOverridden(type, base, "setAttribute",
+                                    String.class, Object.class)
+                    || isOverridden(type, base, "removeAttribute",
+                                    String.class)
+                    || isOverridden(type, base, "getAttribute",
+                                    AttributeKey.class)
+                    || isOverridden(type, base, "setAttribute",
+                                    AttributeKey.class, Object.class)
+                    || isOverridden(type, base, "removeAttribute",
+                                    AttributeKey.class);
+            }
+        };
+
     private ServletRequest request;
 
     /**
@@ -293,6 +320,77 @@ public class ServletRequestWrapper implements ServletRequest {
     }
 
 
+    /**
+     * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのgetAttribute(AttributeKey key)を返すことです。
+     *
+     * <p>このクラスのサブクラスが属性を操作するメソッドのいずれかをオーバーライドしている場合は、<code>String</code>の名前を受け取るメソッドを呼び出します。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のリクエストオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    public <T> T getAttribute(AttributeKey<T> key) {
+        ServletRequest target = attributeTarget();
+        if (target != this) {
+            return target.getAttribute(key);
+        }
+        return key.cast(getAttribute(key.getName()));
+    }
+
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのsetAttribute(AttributeKey key, T value)を呼び出すことです。
+     *
+     * <p>このクラスのサブクラスが属性を操作するメソッドのいずれかをオーバーライドしている場合は、<code>String</code>の名前を受け取るメソッドを呼び出します。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のリクエストオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    public <T> void setAttribute(AttributeKey<T> key, T value) {
+        ServletRequest target = attributeTarget();
+        if (target != this) {
+            target.setAttribute(key, value);
+            return;
+        }
+        setAttribute(key.getName(), value);
+    }
+
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのremoveAttribute(AttributeKey key)を呼び出すことです。
+     *
+     * <p>このクラスのサブクラスが属性を操作するメソッドのいずれかをオーバーライドしている場合は、<code>String</code>の名前を受け取るメソッドを呼び出します。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のリクエストオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    public void removeAttribute(AttributeKey<?> key) {
+        ServletRequest target = attributeTarget();
+        if (target != this) {
+            target.removeAttribute(key);
+            return;
+        }
+        removeAttribute(key.getName());
+    }
+
+
+    /*
+     * Returns this wrapper if its class overrides one of the attribute
+     * accessors, otherwise the first wrapped request that does or the
+     * innermost request.
+     */
+    private ServletRequest attributeTarget() {
+        if (ATTRIBUTE_OVERRIDES.get(getClass())) {
+            return this;
+        }
+        ServletRequest current = getRequest();
+        while (current instanceof ServletRequestWrapper
+                && !ATTRIBUTE_OVERRIDES.get(current.getClass())) {
+            current = ((ServletRequestWrapper) current).getRequest();
+        }
+        return current;
+    }
+
+
     /**
      * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのgetLocale()を返すことです。
      */
@@ -520,6 +618,51 @@ public class ServletRequestWrapper implements ServletRequest {
     }
 
 
+    /**
+     * このServletRequestWrapperがラップしている{@link ServletRequest}のうち、与えられたClassの型の最初のものを返します。
+     *
+     * <p>ラップされたリクエストから順に内側に向かって探します。このServletRequestWrapper自身は対象になりません。
+     *
+     * @param <T> 探すServletRequestの型
+     *
+     * @param wrappedType 探すServletRequestのclassの型
+     *
+     * @return 与えられたClassの型の{@link ServletRequest}、ラップしていない場合は<code>null</code>
+     *
+     * @see #isWrapperFor(Class)
+     *
+     * @since Servlet 4.0.1
+     */
+    public <T extends ServletRequest> T unwrap(Class<T> wrappedType) {
+        if (wrappedType.isInstance(request)) {
+            return wrappedType.cast(request);
+        } else if (request instanceof ServletRequestWrapper) {
+            return ((ServletRequestWrapper) request).unwrap(wrappedType);
+        } else {
+            return null;
+        }
+    }
+
+
+
+    /*
+     * Whether wrapperClass, or a class between baseClass and wrapperClass,
+     * overrides the given public method of baseClass.
+     */
+    private static boolean isOverridden(Class<?> wrapperClass,
+                                        Class<?> baseClass, String name,
+                                        Class<?>... parameterTypes) {
+        try {
+            Class<?> declaringClass = wrapperClass.getMethod(name,
+                parameterTypes).getDeclaringClass();
+            return declaringClass != baseClass
+                && baseClass.isAssignableFrom(declaringClass);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+
     /**
      * ラップされたリクエストのdispatcher typeを取得します。
      *
@@ -533,6 +676,4 @@ public class ServletRequestWrapper implements ServletRequest {
         return request.getDispatcherType();
     }
 
-
 }
-
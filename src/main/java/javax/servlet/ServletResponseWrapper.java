@@ -293,9 +293,30 @@ public class ServletResponseWrapper implements ServletResponse {
         }
     }
 
-}
-
-
-
 
+    /**
+     * このServletResponseWrapperがラップしている{@link ServletResponse}のうち、与えられたClassの型の最初のものを返します。
+     *
+     * <p>ラップされたレスポンスから順に内側に向かって探します。このServletResponseWrapper自身は対象になりません。
+     *
+     * @param <T> 探すServletResponseの型
+     *
+     * @param wrappedType 探すServletResponseのclassの型
+     *
+     * @return 与えられたClassの型の{@link ServletResponse}、ラップしていない場合は<code>null</code>
+     *
+     * @see #isWrapperFor(Class)
+     *
+     * @since Servlet 4.0.1
+     */
+    public <T extends ServletResponse> T unwrap(Class<T> wrappedType) {
+        if (wrappedType.isInstance(response)) {
+            return wrappedType.cast(response);
+        } else if (response instanceof ServletResponseWrapper) {
+            return ((ServletResponseWrapper) response).unwrap(wrappedType);
+        } else {
+            return null;
+        }
+    }
 
+}
@@ -103,13 +103,36 @@ public class Cookie implements Cloneable, Serializable {
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
 
+    /*
+     * TSPECIALS as a 128-bit set: bit (c & 63) of TSPECIALS_LOW for chars
+     * below 64, of TSPECIALS_HIGH for the others.
+     */
+    private static final long TSPECIALS_LOW;
+    private static final long TSPECIALS_HIGH;
+
     static {
         if (Boolean.valueOf(System.getProperty("org.glassfish.web.rfc2109_cookie_names_enforced", "true"))) {
             TSPECIALS = "/()<>@,;:\\\"[]?={} \t";
         } else {
             TSPECIALS = ",; ";
         }
+
+        long low = 0;
+        long high = 0;
+        for (int i = 0; i < TSPECIALS.length(); i++) {
+            char c = TSPECIALS.charAt(i);
+            if (c < 64) {
+                low |= 1L << c;
+            } else {
+                high |= 1L << (c - 64);
+            }
+        }
+        TSPECIALS_LOW = low;
+        TSPECIALS_HIGH = high;
     }
+
+    // fixed date in the past, used as Expires for cookies to be removed
+    private static final String ANCIENT_DATE = "Thu, 01 Jan 1970 00:00:10 GMT";
     
     //
     // The value of the cookie itself.
@@ -131,6 +154,9 @@ public class Cookie implements Cloneable, Serializable {
     private int version = 0;	// ;Version=1 ... means RFC 2109++ style
     private boolean isHttpOnly = false;
 
+    // Set-Cookie header value, cleared by every setter
+    private transient String setCookieHeader;
+
     /**
      * 指定された名前と値を持つCookieを生成します。
      *
@@ -191,6 +217,7 @@ public class Cookie implements Cloneable, Serializable {
      * @see #getComment
      */
     public void setComment(String purpose) {
+        setCookieHeader = null;
         comment = purpose;
     }
 
@@ -223,6 +250,7 @@ public class Cookie implements Cloneable, Serializable {
      * @see #getDomain
      */
     public void setDomain(String domain) {
+        setCookieHeader = null;
         this.domain = domain.toLowerCase(Locale.ENGLISH); // IE allegedly needs this
     }
 
@@ -253,6 +281,7 @@ public class Cookie implements Cloneable, Serializable {
      * @see #getMaxAge
      */
     public void setMaxAge(int expiry) {
+        setCookieHeader = null;
         maxAge = expiry;
     }
 
@@ -285,6 +314,7 @@ public class Cookie implements Cloneable, Serializable {
      * @see #getPath
      */
     public void setPath(String uri) {
+        setCookieHeader = null;
         path = uri;
     }
 
@@ -311,6 +341,7 @@ public class Cookie implements Cloneable, Serializable {
      * @see #getSecure
      */
     public void setSecure(boolean flag) {
+        setCookieHeader = null;
         secure = flag;
     }
 
@@ -349,6 +380,7 @@ public class Cookie implements Cloneable, Serializable {
      * @see #getValue
      */
     public void setValue(String newValue) {
+        setCookieHeader = null;
         value = newValue;
     }
 
@@ -392,6 +424,7 @@ public class Cookie implements Cloneable, Serializable {
      * @see #getVersion
      */
     public void setVersion(int v) {
+        setCookieHeader = null;
         version = v;
     }
 
@@ -408,7 +441,11 @@ public class Cookie implements Cloneable, Serializable {
         int len = value.length();
         for (int i = 0; i < len; i++) {
             char c = value.charAt(i);
-            if (c < 0x20 || c >= 0x7f || TSPECIALS.indexOf(c) != -1) {
+            if (c < 0x20 || c >= 0x7f) {
+                return false;
+            }
+            long bits = c < 64 ? TSPECIALS_LOW : TSPECIALS_HIGH;
+            if ((bits & (1L << (c & 63))) != 0) {
                 return false;
             }
         }
@@ -440,6 +477,7 @@ public class Cookie implements Cloneable, Serializable {
      * @since Servlet 3.0
      */
     public void setHttpOnly(boolean isHttpOnly) {
+        setCookieHeader = null;
         this.isHttpOnly = isHttpOnly;
     }
  
@@ -453,5 +491,157 @@ public class Cookie implements Cloneable, Serializable {
     public boolean isHttpOnly() {
         return isHttpOnly;
     }
-}
 
+
+    /**
+     * このCookieを<code>Set-Cookie</code>レスポンスヘッダーの値に変換して返します。
+     *
+     * <p>返される値にはCookieの名前と値、<code>Max-Age</code>、<code>Domain</code>、<code>Path</code>、
+     * <code>Secure</code>および<code>HttpOnly</code>属性が含まれます。
+     * 最大有効期間が0の場合は、古いクライアントのために過去の日付の<code>Expires</code>属性も含まれます。
+     * バージョンが1の場合は<code>Version</code>属性と<code>Comment</code>属性も含まれます。
+     * 値は設定されたまま出力されるので、必要な場合は呼び出し側でエンコードしてください。
+     * バージョンが0の場合、値はRFC 6265のcookie-valueである必要があり、
+     * セミコロン、カンマ、空白、二重引用符またはバックスラッシュを含む値は拒否されます。
+     * バージョンが1の場合は、値がそれらの文字を含むときに二重引用符で囲み、
+     * 二重引用符とバックスラッシュはバックスラッシュでエスケープします。
+     * コメントの二重引用符とバックスラッシュも同様にエスケープされます。
+     *
+     * <p>変換結果はこのCookieに保持され、いずれかのsetterが呼び出されるまで再利用されます。
+     * 同じ内容のCookieを繰り返し送信する場合は、同じインスタンスを使用することで毎回の変換を省略できます。
+     *
+     * @return <code>Set-Cookie</code>ヘッダーの値
+     *
+     * @throws IllegalArgumentException 値、コメント、ドメイン、パスのいずれかが制御文字かASCII以外の文字を含む場合、
+     * ドメインかパスがセミコロンを含む場合、またはバージョンが0で値がcookie-valueではない場合
+     *
+     * @since Servlet 4.0.1
+     */
+    public String toSetCookieHeader() {
+        String header = setCookieHeader;
+        if (header == null) {
+            header = buildSetCookieHeader();
+            setCookieHeader = header;
+        }
+        return header;
+    }
+
+    private String buildSetCookieHeader() {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(name).append('=');
+        if (value != null) {
+            checkAttribute("value", value, false);
+            if (version == 0) {
+                checkCookieValue(value);
+                sb.append(value);
+            } else if (needsQuoting(value)) {
+                appendQuoted(sb, value);
+            } else {
+                sb.append(value);
+            }
+        }
+        if (version > 0) {
+            sb.append("; Version=1");
+            if (comment != null) {
+                checkAttribute("Comment", comment, false);
+                sb.append("; Comment=");
+                appendQuoted(sb, comment);
+            }
+        }
+        if (maxAge >= 0) {
+            sb.append("; Max-Age=").append(maxAge);
+            if (maxAge == 0) {
+                sb.append("; Expires=").append(ANCIENT_DATE);
+            }
+        }
+        if (domain != null) {
+            checkAttribute("Domain", domain, true);
+            sb.append("; Domain=").append(domain);
+        }
+        if (path != null) {
+            checkAttribute("Path", path, true);
+            sb.append("; Path=").append(path);
+        }
+        if (secure) {
+            sb.append("; Secure");
+        }
+        if (isHttpOnly) {
+            sb.append("; HttpOnly");
+        }
+        return sb.toString();
+    }
+
+    /*
+     * Rejects control characters, which would let the value end the
+     * header line, non-ASCII characters, which have no defined encoding
+     * in a header, and ';' in attributes that are never quoted.
+     */
+    private void checkAttribute(String attribute, String value,
+                                boolean unquoted) {
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c >= 0x7f || (unquoted && c == ';')) {
+                String errMsg =
+                    lStrings.getString("err.cookie_attribute_invalid");
+                throw new IllegalArgumentException(MessageFormat.format(
+                    errMsg, name, attribute));
+            }
+        }
+    }
+
+    /*
+     * Rejects a version 0 value that is not an RFC 6265 cookie-value,
+     * since quoting it would change the value the client sends back.
+     */
+    private void checkCookieValue(String value) {
+        int start = 0;
+        int end = value.length();
+        if (end >= 2 && value.charAt(0) == '"'
+                && value.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c <= 0x20 || c == '"' || c == ',' || c == ';' || c == '\\') {
+                String errMsg =
+                    lStrings.getString("err.cookie_attribute_invalid");
+                throw new IllegalArgumentException(MessageFormat.format(
+                    errMsg, name, "value"));
+            }
+        }
+    }
+
+    private static boolean needsQuoting(String value) {
+        int len = value.length();
+        if (len >= 2 && value.charAt(0) == '"'
+                && value.charAt(len - 1) == '"'
+                && value.indexOf('"', 1) == len - 1
+                && value.indexOf('\\') < 0) {
+            // already a quoted string
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c == ';' || c == ',' || c == ' ' || c == '\t' || c == '"'
+                    || c == '\\') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendQuoted(StringBuilder sb, String value) {
+        sb.append('"');
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
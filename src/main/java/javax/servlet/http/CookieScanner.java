@@ -0,0 +1,152 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+/*
+ * Finds a single cookie in a raw Cookie request header without splitting
+ * the header or creating Cookie objects for the others.
+ */
+// file private
+final class CookieScanner {
+
+    private CookieScanner() { }
+
+    /*
+     * Returns the value of the first cookie called name in the header, or
+     * null if there is none.  As in RFC 6265 section 5.4, cookies are
+     * separated by ';' only, so a ',' is part of the value; surrounding
+     * whitespace is excluded and a quoted value is returned without its
+     * quotes.
+     */
+    static String findValue(String header, String name) {
+        int len = header.length();
+        int nameLength = name.length();
+        int i = 0;
+
+        while (i < len) {
+            // skip separators and leading whitespace
+            char c = header.charAt(i);
+            if (isSeparator(c) || isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            int eq = i;
+            while (eq < len && header.charAt(eq) != '='
+                    && !isSeparator(header.charAt(eq))) {
+                eq++;
+            }
+            if (eq == len || header.charAt(eq) != '=') {
+                // a cookie without a value
+                i = eq + 1;
+                continue;
+            }
+
+            int nameEnd = eq;
+            while (nameEnd > i && isWhitespace(header.charAt(nameEnd - 1))) {
+                nameEnd--;
+            }
+            boolean matches = nameEnd - i == nameLength
+                && header.regionMatches(i, name, 0, nameLength);
+
+            int valueStart = eq + 1;
+            while (valueStart < len
+                    && isWhitespace(header.charAt(valueStart))) {
+                valueStart++;
+            }
+
+            int valueEnd;
+            int next;
+            int close = valueStart < len && header.charAt(valueStart) == '"'
+                ? closingQuote(header, valueStart + 1) : -1;
+            if (close >= 0) {
+                // a quoted value may contain separators
+                valueEnd = close;
+                valueStart++;
+                next = close + 1;
+                while (next < len && !isSeparator(header.charAt(next))) {
+                    next++;
+                }
+            } else {
+                next = valueStart;
+                while (next < len && !isSeparator(header.charAt(next))) {
+                    next++;
+                }
+                valueEnd = next;
+                while (valueEnd > valueStart
+                        && isWhitespace(header.charAt(valueEnd - 1))) {
+                    valueEnd--;
+                }
+            }
+
+            if (matches) {
+                return header.substring(valueStart, valueEnd);
+            }
+            i = next + 1;
+        }
+
+        return null;
+    }
+
+    /*
+     * Returns the index of the quote closing a quoted string whose
+     * contents start at i, or -1 if the string is not terminated.
+     */
+    private static int closingQuote(String header, int i) {
+        int len = header.length();
+        while (i < len) {
+            char c = header.charAt(i);
+            if (c == '"') {
+                return i;
+            }
+            i += c == '\\' ? 2 : 1;
+        }
+        return -1;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ';';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+}
@@ -0,0 +1,588 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+
+/**
+ * <code>application/x-www-form-urlencoded</code>形式のデータを<i>key=value</i>のペアにデコードします。
+ *
+ * <p>デコードの規則は{@link HttpUtils#parseQueryString}と同じです。
+ * 各ペアは&amp;で区切られ、+文字はスペースに変換され、(<i>%xx</i>のような)16進表記で送られた文字は対応する文字に変換されます。
+ *
+ * <p>デコード結果はキーの出現順を保持した変更不可能な<code>Map</code>として返されます。
+ * 同じキーが複数回現れた場合、値は出現順にすべての値を含む配列になります。
+ *
+ * <p>リクエストボディをデコードする場合は、文字セットと上限値を指定してインスタンスを作成し{@link #decode}を使用します。
+ * ボディは一定サイズのチャンクごとに読み込まれながらデコードされ、ボディ全体がメモリ上に保持されることはありません。
+ * ノンブロッキングI/Oを使用する場合は{@link #decodeAsync}を使用します。
+ * インスタンスは不変でスレッドセーフです。
+ *
+ * @see HttpUtils
+ *
+ * @since Servlet 4.0.1
+ */
+public final class FormDecoder {
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    // file private
+    static final int CHUNK_SIZE = 8192;
+
+    private final Charset charset;
+    private final int maxParameterCount;
+    private final long maxSize;
+
+
+    /**
+     * パラメーター数とサイズに上限のない<code>FormDecoder</code>を作成します。
+     *
+     * @param charset   パーセントデコードされたバイト列を文字列に変換するために使用する文字セット
+     *
+     * @throws NullPointerException <code>charset</code>が<code>null</code>の場合
+     */
+    public FormDecoder(Charset charset) {
+        this(charset, -1, -1L);
+    }
+
+
+    /**
+     * 指定された文字セットと上限値で<code>FormDecoder</code>を作成します。
+     *
+     * @param charset   パーセントデコードされたバイト列を文字列に変換するために使用する文字セット
+     *
+     * @param maxParameterCount デコードできるパラメーターの値の最大数、-1の場合は無制限
+     *
+     * @param maxSize   読み込むことのできるデータの最大バイト数、-1の場合は無制限
+     *
+     * @throws NullPointerException <code>charset</code>が<code>null</code>の場合
+     */
+    public FormDecoder(Charset charset, int maxParameterCount, long maxSize) {
+        if (charset == null) {
+            throw new NullPointerException();
+        }
+        this.charset = charset;
+        this.maxParameterCount = maxParameterCount;
+        this.maxSize = maxSize;
+    }
+
+
+    /**
+     * 入力ストリームから<code>application/x-www-form-urlencoded</code>形式のデータをストリームの終端まで読み込み、デコードします。
+     *
+     * <p>データは一定サイズのチャンクごとに読み込まれながらデコードされます。
+     * このメソッドはストリームを閉じません。
+     *
+     * @param in    クライアントから送信されたデータを含む <code>ServletInputStream</code> のオブジェクト
+     *
+     * @return      解析されたキーと値のペアで構築された変更不可能な<code>Map</code>
+     *
+     * @throws IOException  読み込み中にI/Oエラーが発生した
+     *
+     * @throws IllegalArgumentException <code>in</code>が<code>null</code>か、データが不正だった
+     *
+     * @throws IllegalStateException データが最大バイト数を超えたか、パラメーターの数が最大数を超えた
+     */
+    public Map<String, String[]> decode(ServletInputStream in)
+        throws IOException
+    {
+        if (in == null) {
+            throw new IllegalArgumentException();
+        }
+
+        Decoder decoder = newDecoder();
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int n;
+        while ((n = in.read(chunk, 0, chunk.length)) != -1) {
+            decoder.update(chunk, 0, n);
+        }
+        return decoder.finish().toMap();
+    }
+
+
+    /**
+     * 入力ストリームに{@link ReadListener}を登録し、<code>application/x-www-form-urlencoded</code>形式のデータをブロッキングせずに読み込み、デコードします。
+     *
+     * <p>データは{@link ReadListener#onDataAvailable}が呼び出されるたびに{@link ServletInputStream#isReady}が<code>true</code>を返す間だけ読み込まれ、
+     * 逐次デコードされます。
+     * 返される<code>CompletionStage</code>は{@link ReadListener#onAllDataRead}が呼び出された時にデコード結果で完了します。
+     * データが不正だった場合や上限値を超えた場合、または{@link ReadListener#onError}が呼び出された場合は例外で完了します。
+     *
+     * <p>このメソッドは非同期処理が開始されたリクエストかアップグレードされたリクエストのストリームに対してのみ呼び出すことができます。
+     *
+     * @param in    クライアントから送信されたデータを含む <code>ServletInputStream</code> のオブジェクト
+     *
+     * @return      解析されたキーと値のペアで構築された変更不可能な<code>Map</code>で完了する<code>CompletionStage</code>
+     *
+     * @throws IllegalArgumentException <code>in</code>が<code>null</code>の場合
+     *
+     * @throws IllegalStateException {@link ServletInputStream#setReadListener}が<code>IllegalStateException</code>をスローした
+     */
+    public CompletionStage<Map<String, String[]>> decodeAsync(
+            ServletInputStream in) {
+        if (in == null) {
+            throw new IllegalArgumentException();
+        }
+
+        FormReadListener listener = new FormReadListener(in);
+        in.setReadListener(listener);
+        return listener.result;
+    }
+
+
+    // file private
+    Decoder newDecoder() {
+        return new Decoder();
+    }
+
+
+    /**
+     * クエリ文字列を1回の走査で解析し、キーと値のペアを持つ変更不可能な<code>Map</code>を返します。
+     *
+     * <p>このメソッドは各ペアごとに部分文字列を作成せず、元の文字列から直接デコードします。
+     *
+     * @param s     解析するクエリを含んだ文字列
+     *
+     * @return      解析されたキーと値のペアで構築された変更不可能な<code>Map</code>
+     *
+     * @exception IllegalArgumentException クエリ文字列が<code>null</code>または不正だった
+     */
+    public static Map<String, String[]> parse(CharSequence s) {
+        if (s == null) {
+            throw new IllegalArgumentException();
+        }
+
+        ParameterMap params = new ParameterMap();
+        parse(s, params);
+        return params.toMap();
+    }
+
+
+    /*
+     * Single pass decoder for query strings.  Pairs are decoded straight
+     * from the source into a reused buffer; empty pairs are skipped and a
+     * pair without '=' is illegal, as with the former StringTokenizer based
+     * implementation in HttpUtils.
+     */
+    static void parse(CharSequence s, ParameterMap params) {
+        StringBuilder sb = new StringBuilder();
+        String key = null;
+        boolean inPair = false;
+        int len = s.length();
+
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&':
+                    if (inPair) {
+                        addPair(key, sb, params);
+                        key = null;
+                        inPair = false;
+                    }
+                    break;
+                case '=':
+                    inPair = true;
+                    if (key == null) {
+                        key = sb.toString();
+                        sb.setLength(0);
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+                case '+':
+                    inPair = true;
+                    sb.append(' ');
+                    break;
+                case '%':
+                    inPair = true;
+                    // an escape ends at '&', or at '=' while in the key
+                    int avail = 0;
+                    while (avail < 2 && i + 1 + avail < len) {
+                        char d = s.charAt(i + 1 + avail);
+                        if (d == '&' || (d == '=' && key == null)) {
+                            break;
+                        }
+                        avail++;
+                    }
+                    if (avail < 2) {
+                        // truncated escape, keep it as is
+                        sb.append(s, i, i + 1 + avail);
+                        i += avail;
+                    } else {
+                        int hi = Character.digit(s.charAt(i + 1), 16);
+                        int lo = Character.digit(s.charAt(i + 2), 16);
+                        if (hi < 0 || lo < 0) {
+                            // XXX
+                            // need to be more specific about illegal arg
+                            throw new IllegalArgumentException();
+                        }
+                        sb.append((char) ((hi << 4) + lo));
+                        i += 2;
+                    }
+                    break;
+                default:
+                    inPair = true;
+                    sb.append(c);
+                    break;
+            }
+        }
+
+        if (inPair) {
+            addPair(key, sb, params);
+        }
+    }
+
+
+    private static void addPair(String key, StringBuilder sb,
+                                ParameterMap params) {
+        if (key == null) {
+            // XXX
+            // should give more detail about the illegal argument
+            throw new IllegalArgumentException();
+        }
+        params.add(key, sb.toString());
+        sb.setLength(0);
+    }
+
+
+    /*
+     * Incremental decoder for form data arriving as bytes.  Chunks may end
+     * anywhere, including inside a %xx escape, so the escape state is kept
+     * across calls to update().  Decoded bytes of the current name or value
+     * are collected in a reused buffer and converted once the pair ends.
+     */
+    final class Decoder {
+
+        private final ParameterMap params = new ParameterMap();
+        private byte[] buf = new byte[64];
+        private int count;
+        private String key;
+        private boolean inPair;
+        private long size;
+
+        // 0: no escape, 1: after '%', 2: after '%' and one more byte
+        private int escape;
+        private byte pending;
+
+        private Decoder() { }
+
+        void update(byte[] b, int off, int len) {
+            size += len;
+            if (maxSize >= 0 && size > maxSize) {
+                throw new IllegalStateException(MessageFormat.format(
+                    lStrings.getString("err.form.too_large"),
+                    String.valueOf(maxSize)));
+            }
+
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                byte c = b[i];
+
+                // as in parse(), '&' and a '=' ending the key cut an escape
+                if (escape != 0 && c != '&' && (c != '=' || key != null)) {
+                    if (escape == 1) {
+                        pending = c;
+                        escape = 2;
+                    } else {
+                        int hi = Character.digit(pending, 16);
+                        int lo = Character.digit(c, 16);
+                        if (hi < 0 || lo < 0) {
+                            throw new IllegalArgumentException();
+                        }
+                        append((byte) ((hi << 4) + lo));
+                        escape = 0;
+                    }
+                    continue;
+                }
+                flushEscape();
+
+                switch (c) {
+                    case '&':
+                        if (inPair) {
+                            endPair();
+                        }
+                        break;
+                    case '=':
+                        inPair = true;
+                        if (key == null) {
+                            key = new String(buf, 0, count, charset);
+                            count = 0;
+                        } else {
+                            append(c);
+                        }
+                        break;
+                    case '+':
+                        inPair = true;
+                        append((byte) ' ');
+                        break;
+                    case '%':
+                        inPair = true;
+                        escape = 1;
+                        break;
+                    default:
+                        inPair = true;
+                        append(c);
+                        break;
+                }
+            }
+        }
+
+        ParameterMap finish() {
+            flushEscape();
+            if (inPair) {
+                endPair();
+            }
+            return params;
+        }
+
+        /*
+         * A truncated escape is kept as is.
+         */
+        private void flushEscape() {
+            if (escape != 0) {
+                append((byte) '%');
+                if (escape == 2) {
+                    append(pending);
+                }
+                escape = 0;
+            }
+        }
+
+        private void endPair() {
+            if (key == null) {
+                throw new IllegalArgumentException();
+            }
+            if (maxParameterCount >= 0
+                    && params.getValueCount() >= maxParameterCount) {
+                throw new IllegalStateException(MessageFormat.format(
+                    lStrings.getString("err.form.too_many_parameters"),
+                    String.valueOf(maxParameterCount)));
+            }
+            params.add(key, new String(buf, 0, count, charset));
+            key = null;
+            inPair = false;
+            count = 0;
+        }
+
+        private void append(byte c) {
+            if (count == buf.length) {
+                byte[] grown = new byte[count << 1];
+                System.arraycopy(buf, 0, grown, 0, count);
+                buf = grown;
+            }
+            buf[count++] = c;
+        }
+    }
+
+
+    /*
+     * Feeds whatever the stream can deliver without blocking to a Decoder
+     * and completes the result once the container reports the end of the
+     * request body.
+     */
+    private final class FormReadListener implements ReadListener {
+
+        private final ServletInputStream in;
+        private final Decoder decoder = new Decoder();
+        private final byte[] chunk = new byte[CHUNK_SIZE];
+        private final CompletableFuture<Map<String, String[]>> result =
+            new CompletableFuture<Map<String, String[]>>();
+
+        FormReadListener(ServletInputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                int n;
+                while (in.isReady()
+                        && (n = in.read(chunk, 0, chunk.length)) != -1) {
+                    decoder.update(chunk, 0, n);
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.complete(decoder.finish().toMap());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            result.completeExceptionally(t);
+        }
+    }
+
+
+    /*
+     * Multi-valued parameter map filled while decoding and then handed out
+     * as the read-only result itself, so no second map is built.  A key
+     * seen once gets a one-element array.  Repeated keys collect their
+     * values in a Values buffer that grows by doubling, and toMap() stores
+     * them as exactly sized arrays.  add() must not be called after
+     * toMap().
+     */
+    static final class ParameterMap extends AbstractMap<String, String[]> {
+
+        private final LinkedHashMap<String, String[]> entries =
+            new LinkedHashMap<String, String[]>();
+
+        private final Map<String, String[]> view =
+            Collections.unmodifiableMap(entries);
+
+        private HashMap<String, Values> repeated;
+
+        private int valueCount;
+
+        void add(String key, String value) {
+            String[] old = entries.get(key);
+            if (old == null) {
+                entries.put(key, new String[] { value });
+            } else {
+                if (repeated == null) {
+                    repeated = new HashMap<String, Values>();
+                }
+                Values values = repeated.get(key);
+                if (values == null) {
+                    repeated.put(key, new Values(old[0], value));
+                } else {
+                    values.add(value);
+                }
+            }
+            valueCount++;
+        }
+
+        int getValueCount() {
+            return valueCount;
+        }
+
+        Map<String, String[]> toMap() {
+            if (repeated != null) {
+                // replacing the value keeps the key's position
+                for (Map.Entry<String, Values> e : repeated.entrySet()) {
+                    entries.put(e.getKey(), e.getValue().toArray());
+                }
+                repeated = null;
+            }
+            return this;
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return entries.containsKey(key);
+        }
+
+        @Override
+        public String[] get(Object key) {
+            return entries.get(key);
+        }
+
+        @Override
+        public Set<Map.Entry<String, String[]>> entrySet() {
+            return view.entrySet();
+        }
+    }
+
+
+    private static final class Values {
+
+        private String[] values;
+        private int size;
+
+        Values(String first, String second) {
+            values = new String[4];
+            values[0] = first;
+            values[1] = second;
+            size = 2;
+        }
+
+        void add(String value) {
+            if (size == values.length) {
+                String[] grown = new String[size << 1];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = value;
+        }
+
+        String[] toArray() {
+            String[] result = new String[size];
+            System.arraycopy(values, 0, result, 0, size);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 大文字小文字を区別しないHTTPヘッダーの名前を表します。
+ *
+ * <p>小文字に変換した名前とハッシュ値はインスタンスの作成時に一度だけ計算されます。
+ * 同じヘッダーに繰り返しアクセスする場合は、インスタンスを定数として保持して再利用することで、
+ * アクセスのたびに名前を比較したりハッシュ値を計算したりする必要がなくなります。
+ *
+ * <p>よく使われるヘッダーの名前は定数として定義されています。
+ * {@link #of}は大文字小文字を区別せずにこれらの名前と一致する場合、新しいインスタンスを作成せずに定数を返します。
+ * それぞれのインスタンスは正規の表記と小文字の表記のISO-8859-1のバイト列を保持しているため、
+ * サーブレットコンテナはヘッダーを書き出すたびに名前をエンコードする必要がありません。
+ *
+ * <p>インスタンスは不変です。
+ * 2つのインスタンスは大文字小文字を区別せずに名前が等しい場合に等しくなります。
+ * {@link #hashCode}は小文字の名前の{@link String#hashCode}と同じ値を返すため、
+ * JVMの実行ごとに変わることはありません。
+ *
+ * @see HttpServletRequest#getHeader(HeaderName)
+ *
+ * @since Servlet 4.0.1
+ */
+public final class HeaderName {
+
+    private static final Map<String, HeaderName> KNOWN = new HashMap<>();
+
+    /** <code>Accept</code>ヘッダー */
+    public static final HeaderName ACCEPT = register("Accept");
+    /** <code>Accept-Charset</code>ヘッダー */
+    public static final HeaderName ACCEPT_CHARSET = register("Accept-Charset");
+    /** <code>Accept-Encoding</code>ヘッダー */
+    public static final HeaderName ACCEPT_ENCODING = register("Accept-Encoding");
+    /** <code>Accept-Language</code>ヘッダー */
+    public static final HeaderName ACCEPT_LANGUAGE = register("Accept-Language");
+    /** <code>Accept-Ranges</code>ヘッダー */
+    public static final HeaderName ACCEPT_RANGES = register("Accept-Ranges");
+    /** <code>Allow</code>ヘッダー */
+    public static final HeaderName ALLOW = register("Allow");
+    /** <code>Authorization</code>ヘッダー */
+    public static final HeaderName AUTHORIZATION = register("Authorization");
+    /** <code>Cache-Control</code>ヘッダー */
+    public static final HeaderName CACHE_CONTROL = register("Cache-Control");
+    /** <code>Connection</code>ヘッダー */
+    public static final HeaderName CONNECTION = register("Connection");
+    /** <code>Content-Disposition</code>ヘッダー */
+    public static final HeaderName CONTENT_DISPOSITION = register("Content-Disposition");
+    /** <code>Content-Encoding</code>ヘッダー */
+    public static final HeaderName CONTENT_ENCODING = register("Content-Encoding");
+    /** <code>Content-Language</code>ヘッダー */
+    public static final HeaderName CONTENT_LANGUAGE = register("Content-Language");
+    /** <code>Content-Length</code>ヘッダー */
+    public static final HeaderName CONTENT_LENGTH = register("Content-Length");
+    /** <code>Content-Range</code>ヘッダー */
+    public static final HeaderName CONTENT_RANGE = register("Content-Range");
+    /** <code>Content-Type</code>ヘッダー */
+    public static final HeaderName CONTENT_TYPE = register("Content-Type");
+    /** <code>Cookie</code>ヘッダー */
+    public static final HeaderName COOKIE = register("Cookie");
+    /** <code>Date</code>ヘッダー */
+    public static final HeaderName DATE = register("Date");
+    /** <code>ETag</code>ヘッダー */
+    public static final HeaderName ETAG = register("ETag");
+    /** <code>Expect</code>ヘッダー */
+    public static final HeaderName EXPECT = register("Expect");
+    /** <code>Expires</code>ヘッダー */
+    public static final HeaderName EXPIRES = register("Expires");
+    /** <code>Host</code>ヘッダー */
+    public static final HeaderName HOST = register("Host");
+    /** <code>If-Match</code>ヘッダー */
+    public static final HeaderName IF_MATCH = register("If-Match");
+    /** <code>If-Modified-Since</code>ヘッダー */
+    public static final HeaderName IF_MODIFIED_SINCE = register("If-Modified-Since");
+    /** <code>If-None-Match</code>ヘッダー */
+    public static final HeaderName IF_NONE_MATCH = register("If-None-Match");
+    /** <code>If-Range</code>ヘッダー */
+    public static final HeaderName IF_RANGE = register("If-Range");
+    /** <code>If-Unmodified-Since</code>ヘッダー */
+    public static final HeaderName IF_UNMODIFIED_SINCE = register("If-Unmodified-Since");
+    /** <code>Last-Modified</code>ヘッダー */
+    public static final HeaderName LAST_MODIFIED = register("Last-Modified");
+    /** <code>Location</code>ヘッダー */
+    public static final HeaderName LOCATION = register("Location");
+    /** <code>Pragma</code>ヘッダー */
+    public static final HeaderName PRAGMA = register("Pragma");
+    /** <code>Range</code>ヘッダー */
+    public static final HeaderName RANGE = register("Range");
+    /** <code>Referer</code>ヘッダー */
+    public static final HeaderName REFERER = register("Referer");
+    /** <code>Set-Cookie</code>ヘッダー */
+    public static final HeaderName SET_COOKIE = register("Set-Cookie");
+    /** <code>Transfer-Encoding</code>ヘッダー */
+    public static final HeaderName TRANSFER_ENCODING = register("Transfer-Encoding");
+    /** <code>Upgrade</code>ヘッダー */
+    public static final HeaderName UPGRADE = register("Upgrade");
+    /** <code>User-Agent</code>ヘッダー */
+    public static final HeaderName USER_AGENT = register("User-Agent");
+    /** <code>Vary</code>ヘッダー */
+    public static final HeaderName VARY = register("Vary");
+    /** <code>WWW-Authenticate</code>ヘッダー */
+    public static final HeaderName WWW_AUTHENTICATE = register("WWW-Authenticate");
+
+    private final String name;
+    private final String lowerCaseName;
+    private final int hash;
+    private final byte[] bytes;
+    private final byte[] lowerCaseBytes;
+
+    private HeaderName(String name, String lowerCaseName) {
+        this.name = name;
+        this.lowerCaseName = lowerCaseName;
+        this.hash = lowerCaseName.hashCode();
+        this.bytes = name.getBytes(StandardCharsets.ISO_8859_1);
+        this.lowerCaseBytes = lowerCaseName.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static HeaderName register(String name) {
+        String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+        HeaderName headerName = new HeaderName(name, lowerCaseName);
+        KNOWN.put(lowerCaseName, headerName);
+        return headerName;
+    }
+
+    /**
+     * 指定された名前の<code>HeaderName</code>を返します。
+     *
+     * <p>名前が大文字小文字を区別せずにこのクラスの定数のいずれかと一致する場合、その定数を返します。
+     * この場合、返される<code>HeaderName</code>の{@link #getName}は正規の表記になります。
+     *
+     * @param name  ヘッダーの名前
+     *
+     * @return  指定された名前の<code>HeaderName</code>
+     *
+     * @throws IllegalArgumentException <code>name</code>が<code>null</code>か空の場合
+     */
+    public static HeaderName of(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        String lowerCaseName = name.toLowerCase(Locale.ENGLISH);
+        HeaderName known = KNOWN.get(lowerCaseName);
+        if (known != null) {
+            return known;
+        }
+        return new HeaderName(name, lowerCaseName);
+    }
+
+    /**
+     * 作成時に指定された表記のヘッダーの名前を返します。
+     *
+     * @return  ヘッダーの名前
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 小文字に変換したヘッダーの名前を返します。
+     *
+     * @return  小文字に変換したヘッダーの名前
+     */
+    public String getLowerCaseName() {
+        return lowerCaseName;
+    }
+
+    /**
+     * ヘッダーの名前をISO-8859-1でエンコードしたバイト列を返します。
+     *
+     * <p>返される配列はコピーです。
+     * コピーを避けたい場合は{@link #writeTo}を使用してください。
+     *
+     * @return  ヘッダーの名前のバイト列
+     */
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * 小文字に変換したヘッダーの名前をISO-8859-1でエンコードしたバイト列を返します。
+     *
+     * <p>返される配列はコピーです。
+     *
+     * @return  小文字に変換したヘッダーの名前のバイト列
+     */
+    public byte[] getLowerCaseBytes() {
+        return lowerCaseBytes.clone();
+    }
+
+    /**
+     * ヘッダーの名前をISO-8859-1でエンコードしたバイト列を指定されたバッファに書き込みます。
+     *
+     * @param dst   書き込み先のバッファ
+     *
+     * @throws java.nio.BufferOverflowException バッファの残りがバイト列の長さより小さい場合
+     * @throws java.nio.ReadOnlyBufferException バッファが読み取り専用の場合
+     */
+    public void writeTo(ByteBuffer dst) {
+        dst.put(bytes);
+    }
+
+    /**
+     * 小文字に変換したヘッダーの名前をISO-8859-1でエンコードしたバイト列を指定されたバッファに書き込みます。
+     *
+     * <p>HTTP/2のようにヘッダーの名前を小文字で送信するプロトコルで使用します。
+     *
+     * @param dst   書き込み先のバッファ
+     *
+     * @throws java.nio.BufferOverflowException バッファの残りがバイト列の長さより小さい場合
+     * @throws java.nio.ReadOnlyBufferException バッファが読み取り専用の場合
+     */
+    public void writeLowerCaseTo(ByteBuffer dst) {
+        dst.put(lowerCaseBytes);
+    }
+
+    /**
+     * 小文字に変換したヘッダーの名前の{@link String#hashCode}を返します。
+     *
+     * @return  ハッシュ値
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof HeaderName)) {
+            return false;
+        }
+        HeaderName other = (HeaderName) o;
+        return hash == other.hash && lowerCaseName.equals(other.lowerCaseName);
+    }
+
+    /**
+     * ヘッダーの名前を返します。
+     *
+     * @return  {@link #getName}と同じ値
+     */
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -58,13 +58,21 @@
 
 package javax.servlet.http;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.Enumeration;
+import java.util.UUID;
 import java.util.ResourceBundle;
 
 import javax.servlet.*;
@@ -106,13 +114,49 @@ public abstract class HttpServlet extends GenericServlet
     private static final String METHOD_PUT = "PUT";
     private static final String METHOD_TRACE = "TRACE";
 
-    private static final String HEADER_IFMODSINCE = "If-Modified-Since";
-    private static final String HEADER_LASTMOD = "Last-Modified";
+    // more ranges than this in one request are not worth serving
+    private static final int MAX_RANGES = 64;
+    private static final int RANGE_BUFFER_SIZE = 8192;
+    private static final String CRLF = "\r\n";
+
+    /*
+     * The set of overridden doXXX methods of a servlet class never changes,
+     * so the Allow header sent for OPTIONS is computed once per class
+     * instead of walking the class hierarchy on every request.
+     */
+    private static final ClassValue<String> ALLOW_HEADERS =
+        new ClassValue<String>() {
+            @Override
+            protected String computeValue(Class<?> type) {
+                return computeAllowHeader(type);
+            }
+        };
     
     private static final String LSTRING_FILE =
         "javax.servlet.http.LocalStrings";
     private static ResourceBundle lStrings =
         ResourceBundle.getBundle(LSTRING_FILE);
+
+    /*
+     * The error messages only depend on the bundle, which is resolved once
+     * for the default locale, so they are looked up once here rather than
+     * on every rejected request.
+     */
+    private static final String MSG_GET_NOT_SUPPORTED =
+        lStrings.getString("http.method_get_not_supported");
+    private static final String MSG_POST_NOT_SUPPORTED =
+        lStrings.getString("http.method_post_not_supported");
+    private static final String MSG_PUT_NOT_SUPPORTED =
+        lStrings.getString("http.method_put_not_supported");
+    private static final String MSG_DELETE_NOT_SUPPORTED =
+        lStrings.getString("http.method_delete_not_supported");
+
+    /*
+     * http.method_not_implemented pre-formatted around its single argument,
+     * so that unknown methods only cost a concatenation.
+     */
+    private static final String[] MSG_NOT_IMPLEMENTED =
+        splitMessage(lStrings.getString("http.method_not_implemented"));
    
     
     /**
@@ -169,13 +213,7 @@ public abstract class HttpServlet extends GenericServlet
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
         throws ServletException, IOException
     {
-        String protocol = req.getProtocol();
-        String msg = lStrings.getString("http.method_get_not_supported");
-        if (protocol.endsWith("1.1")) {
-            resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, msg);
-        } else {
-            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, msg);
-        }
+        sendMethodNotSupported(req, resp, MSG_GET_NOT_SUPPORTED);
     }
 
 
@@ -198,11 +236,77 @@ public abstract class HttpServlet extends GenericServlet
     }
 
 
+    /**
+     * リクエストに応じてこのサーブレットが示すリソースの現在のエンティティタグを返します。
+     * エンティティタグが判らない場合、このメソッドは<code>null</code>を返します。(デフォルトです)
+     *
+     * <p>返される値は<code>ETag</code>ヘッダーにそのまま設定できる形式、
+     * つまり<code>"xyzzy"</code>のような二重引用符で囲まれた文字列か、弱いエンティティタグの場合は<code>W/"xyzzy"</code>でなければなりません。
+     *
+     * <p>このメソッドが<code>null</code>以外を返す場合、<code>service</code>メソッドは
+     * <code>If-Match</code>、<code>If-None-Match</code>と<code>If-Unmodified-Since</code>ヘッダーを評価し、
+     * 条件が満たされない場合は<code>doGet</code>、<code>doHead</code>、<code>doPut</code>または<code>doDelete</code>を呼び出さずに
+     * HTTP "Not Modified"(304)または"Precondition Failed"(412)を返します。
+     * {@link #getLastModified}と異なり、1秒以内に複数回変更されるリソースでも正確に判定できます。
+     *
+     * <p>エンティティタグを迅速に計算できるサーブレットはこのメソッドをオーバーライドする必要があります。
+     *
+     * @param req   サーブレットに送られた <code>HttpServletRequest</code> のオブジェクト
+     *
+     * @return リソースのエンティティタグ、不明な場合は<code>null</code>
+     *
+     * @see #getLastModified
+     *
+     * @since Servlet 4.0.1
+     */
+    protected String getETag(HttpServletRequest req) {
+        return null;
+    }
+
+
+    /**
+     * <code>Range</code>ヘッダーを含むGETリクエストに対して、部分的に読み込むことのできるリソースを返します。
+     * リソースが部分的な読み込みに対応していない場合、このメソッドは<code>null</code>を返します。(デフォルトです)
+     *
+     * <p>このメソッドが<code>null</code>以外を返す場合、<code>service</code>メソッドは<code>doGet</code>を呼び出さずに
+     * 要求された範囲だけを読み込んでHTTP "Partial Content"(206)のレスポンスを返します。
+     * 複数の範囲が要求された場合は<code>multipart/byteranges</code>形式で返します。
+     * 要求された範囲がどれもリソースの範囲外の場合は"Requested Range Not Satisfiable"(416)を返します。
+     * 重なり合う範囲や隣接する範囲は1つにまとめて返します。
+     * 要求された範囲の長さの合計がリソースの長さを超える場合は、同じ内容を何度も送らないように範囲を無視して、リソース全体を"OK"(200)で返します。
+     * <code>If-Range</code>ヘッダーは{@link #getETag}と{@link #getLastModified}を使用して評価され、
+     * 条件を満たさない場合や<code>Range</code>ヘッダーが不正な場合、このメソッドは呼び出されず<code>doGet</code>が呼び出されます。
+     *
+     * <p><code>Content-Type</code>などのボディ以外のレスポンスヘッダーは、このメソッドの中で<code>resp</code>に設定します。
+     * 返されたチャネルはレスポンスの送信後に<code>service</code>メソッドによって閉じられます。
+     *
+     * @param req   クライアントからのリクエストを含む{@link HttpServletRequest}オブジェクト
+     *
+     * @param resp  クライアントに返すレスポンスを含む{@link HttpServletResponse}オブジェクト
+     *
+     * @return リソースの内容を読み込む<code>SeekableByteChannel</code>、部分的な読み込みに対応していない場合は<code>null</code>
+     *
+     * @throws IOException   リソースを開いているときにI/Oエラーが発生した
+     *
+     * @throws ServletException  リクエストが処理できなかった
+     *
+     * @since Servlet 4.0.1
+     */
+    protected SeekableByteChannel getRangeResource(HttpServletRequest req,
+                                                   HttpServletResponse resp)
+        throws ServletException, IOException
+    {
+        return null;
+    }
+
+
     /**
      * protectedな<code>service</code>メソッドからHTTP HEADリクエストを受け取り、リクエストを処理します。
      * 
      * クライアントはContent-TypeやContent-Lengthなどのレスポンスのヘッダーに含まれる情報だけを参照したいときにHEADリクエストを送ります。
      * HTTP HEADメソッドはContent-Lengthヘッダを正確に設定するためにレスポンスの出力バイト数をカウントします。
+     * レスポンスの文字エンコーディングがUTF-8、ISO-8859-1またはUS-ASCIIの場合、
+     * <code>getWriter</code>で書き込まれた文字は実際にはエンコードされず、エンコード後のバイト数だけが計算されます。
      * 
      * <p> このメソッドをオーバーライドすると、レスポンスボディボディの計算を回避しレスポンスヘッダーを直接設定することでパフォーマンスを向上させることができます。
      * 書き込む<code>doHead</code>メソッドが安全かつ冪等である（つまり、一回のHTTP HEAD要求に対して複数回呼び出されないようにする）ことを確認してください。
@@ -269,13 +373,7 @@ public abstract class HttpServlet extends GenericServlet
     protected void doPost(HttpServletRequest req, HttpServletResponse resp)
         throws ServletException, IOException
     {
-        String protocol = req.getProtocol();
-        String msg = lStrings.getString("http.method_post_not_supported");
-        if (protocol.endsWith("1.1")) {
-            resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, msg);
-        } else {
-            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, msg);
-        }
+        sendMethodNotSupported(req, resp, MSG_POST_NOT_SUPPORTED);
     }
 
 
@@ -309,13 +407,7 @@ public abstract class HttpServlet extends GenericServlet
     protected void doPut(HttpServletRequest req, HttpServletResponse resp)
         throws ServletException, IOException
     {
-        String protocol = req.getProtocol();
-        String msg = lStrings.getString("http.method_put_not_supported");
-        if (protocol.endsWith("1.1")) {
-            resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, msg);
-        } else {
-            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, msg);
-        }
+        sendMethodNotSupported(req, resp, MSG_PUT_NOT_SUPPORTED);
     }
 
 
@@ -343,17 +435,11 @@ public abstract class HttpServlet extends GenericServlet
                             HttpServletResponse resp)
         throws ServletException, IOException
     {
-        String protocol = req.getProtocol();
-        String msg = lStrings.getString("http.method_delete_not_supported");
-        if (protocol.endsWith("1.1")) {
-            resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, msg);
-        } else {
-            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, msg);
-        }
+        sendMethodNotSupported(req, resp, MSG_DELETE_NOT_SUPPORTED);
     }
     
 
-    private Method[] getAllDeclaredMethods(Class<? extends HttpServlet> c) {
+    private static Method[] getAllDeclaredMethods(Class<?> c) {
 
         Class<?> clazz = c;
         Method[] allMethods = null;
@@ -379,31 +465,12 @@ public abstract class HttpServlet extends GenericServlet
     }
 
 
-    /**
-     * サーブレットがOPTIONSリクエストを処理できるようにするために(serviceメソッド経由で)サーバーによって呼び出されます。
-     * 
-     *  OPTIONS要求はサーバーがサポートするHTTPメソッドを測定し適切なヘッダーを返します。
-     * たとえば、サーブレットが<code>doGet</code>メソッドをオーバーライドする場合、このメソッドは次のヘッダーを返します。
-     *
-     * <p><code>Allow: GET, HEAD, TRACE, OPTIONS</code>
-     * 
-     * <p>サーブレットがHTTP 1.1で実装されているものよりも新しく制定されたHTTPメソッドを実装していない限り、
-     * このメソッドをオーバーライドする必要はありません。
-     *
-     * <p>訳注：HTTP/2でもHTTPのメソッドは増えていないのでこのドキュメントの内容は有効です。
-     *
-     * @param req   クライアントからのリクエストを含む{@link HttpServletRequest}オブジェクト
-     *
-     * @param resp  クライアントに返すレスポンスを含む{@link HttpServletResponse}オブジェクト                             
-     *
-     * @throws IOException   サーブレットがOPTIONSリクエストを処理しているときにI/Oエラーが発生した
-     *
-     * @throws ServletException  OPTIONSのためのリクエストが処理できなかった
+    /*
+     * Builds the value of the Allow header from the doXXX methods
+     * overridden by the given servlet class.
      */
-    protected void doOptions(HttpServletRequest req, HttpServletResponse resp)
-        throws ServletException, IOException
-    {
-        Method[] methods = getAllDeclaredMethods(this.getClass());
+    private static String computeAllowHeader(Class<?> c) {
+        Method[] methods = getAllDeclaredMethods(c);
         
         boolean ALLOW_GET = false;
         boolean ALLOW_HEAD = false;
@@ -472,7 +539,35 @@ public abstract class HttpServlet extends GenericServlet
             allow.append(METHOD_OPTIONS);
         }
         
-        resp.setHeader("Allow", allow.toString());
+        return allow.toString();
+    }
+
+
+    /**
+     * サーブレットがOPTIONSリクエストを処理できるようにするために(serviceメソッド経由で)サーバーによって呼び出されます。
+     * 
+     *  OPTIONS要求はサーバーがサポートするHTTPメソッドを測定し適切なヘッダーを返します。
+     * たとえば、サーブレットが<code>doGet</code>メソッドをオーバーライドする場合、このメソッドは次のヘッダーを返します。
+     *
+     * <p><code>Allow: GET, HEAD, TRACE, OPTIONS</code>
+     * 
+     * <p>サーブレットがHTTP 1.1で実装されているものよりも新しく制定されたHTTPメソッドを実装していない限り、
+     * このメソッドをオーバーライドする必要はありません。
+     *
+     * <p>訳注：HTTP/2でもHTTPのメソッドは増えていないのでこのドキュメントの内容は有効です。
+     *
+     * @param req   クライアントからのリクエストを含む{@link HttpServletRequest}オブジェクト
+     *
+     * @param resp  クライアントに返すレスポンスを含む{@link HttpServletResponse}オブジェクト                             
+     *
+     * @throws IOException   サーブレットがOPTIONSリクエストを処理しているときにI/Oエラーが発生した
+     *
+     * @throws ServletException  OPTIONSのためのリクエストが処理できなかった
+     */
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException, IOException
+    {
+        resp.setHeader(HeaderName.ALLOW, ALLOW_HEADERS.get(this.getClass()));
     }
     
     
@@ -522,6 +617,7 @@ public abstract class HttpServlet extends GenericServlet
     /**
      * publicな<code>service</code>メソッドから標準のHTTPリクエストを受け取りこのクラスで定義されている<code>do</code><i>XXX</i>メソッドにディスパッチします。
      * このメソッドは{@link javax.servlet.Servlet#service}メソッドのHTTPに特化したバージョンです。
+     * それ以外のHTTPメソッドは{@link #doExtensionMethod}にディスパッチされます。
      * このメソッドをオーバーライドする必要はありません。
      *
      * @param req   クライアントからのリクエストを含む{@link HttpServletRequest}オブジェクト
@@ -539,58 +635,166 @@ public abstract class HttpServlet extends GenericServlet
     {
         String method = req.getMethod();
 
-        if (method.equals(METHOD_GET)) {
+        switch (method) {
+        case METHOD_GET: {
+            String etag = getETag(req);
             long lastModified = getLastModified(req);
-            if (lastModified == -1) {
-                // servlet doesn't support if-modified-since, no reason
+            if (etag == null && lastModified == -1) {
+                // servlet doesn't support conditional requests, no reason
                 // to go through further expensive logic
-                doGet(req, resp);
-            } else {
-                long ifModifiedSince = req.getDateHeader(HEADER_IFMODSINCE);
-                if (ifModifiedSince < lastModified) {
+                doGetOrRanges(req, resp, null, -1);
+            } else if (checkPreconditions(req, resp, true, etag,
+                                          lastModified)) {
+                long ifModifiedSince = -1;
+                if (lastModified != -1
+                        && req.getHeader(HeaderName.IF_NONE_MATCH) == null) {
+                    ifModifiedSince = req.getDateHeader(
+                        HeaderName.IF_MODIFIED_SINCE.getName());
+                }
+                if (lastModified == -1 || ifModifiedSince < lastModified) {
                     // If the servlet mod time is later, call doGet()
                     // Round down to the nearest second for a proper compare
                     // A ifModifiedSince of -1 will always be less
                     maybeSetLastModified(resp, lastModified);
-                    doGet(req, resp);
+                    maybeSetETag(resp, etag);
+                    doGetOrRanges(req, resp, etag, lastModified);
                 } else {
+                    maybeSetETag(resp, etag);
                     resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
                 }
             }
+            break;
+        }
 
-        } else if (method.equals(METHOD_HEAD)) {
+        case METHOD_HEAD: {
+            String etag = getETag(req);
             long lastModified = getLastModified(req);
-            maybeSetLastModified(resp, lastModified);
-            doHead(req, resp);
+            if ((etag == null && lastModified == -1)
+                    || checkPreconditions(req, resp, true, etag,
+                                          lastModified)) {
+                maybeSetLastModified(resp, lastModified);
+                maybeSetETag(resp, etag);
+                doHead(req, resp);
+            }
+            break;
+        }
 
-        } else if (method.equals(METHOD_POST)) {
+        case METHOD_POST:
             doPost(req, resp);
-            
-        } else if (method.equals(METHOD_PUT)) {
-            doPut(req, resp);
-            
-        } else if (method.equals(METHOD_DELETE)) {
-            doDelete(req, resp);
-            
-        } else if (method.equals(METHOD_OPTIONS)) {
+            break;
+
+        case METHOD_PUT: {
+            if (!hasPreconditions(req)) {
+                doPut(req, resp);
+                break;
+            }
+            String etag = getETag(req);
+            long lastModified = getLastModified(req);
+            if ((etag == null && lastModified == -1)
+                    || checkPreconditions(req, resp, false, etag,
+                                          lastModified)) {
+                doPut(req, resp);
+            }
+            break;
+        }
+
+        case METHOD_DELETE: {
+            if (!hasPreconditions(req)) {
+                doDelete(req, resp);
+                break;
+            }
+            String etag = getETag(req);
+            long lastModified = getLastModified(req);
+            if ((etag == null && lastModified == -1)
+                    || checkPreconditions(req, resp, false, etag,
+                                          lastModified)) {
+                doDelete(req, resp);
+            }
+            break;
+        }
+
+        case METHOD_OPTIONS:
             doOptions(req,resp);
-            
-        } else if (method.equals(METHOD_TRACE)) {
+            break;
+
+        case METHOD_TRACE:
             doTrace(req,resp);
-            
+            break;
+
+        default:
+            doExtensionMethod(method, req, resp);
+            break;
+        }
+    }
+
+
+    /**
+     * <code>service</code>メソッドがこのクラスで定義されていないHTTPメソッド(PATCH、PROPFINDなど)のリクエストを受け取った時に呼び出されます。
+     *
+     * <p>拡張メソッドをサポートするサーブレットは、<code>service</code>メソッドをオーバーライドする代わりにこのメソッドをオーバーライドし、
+     * <code>method</code>の値によって処理を振り分けます。
+     * サポートしないメソッドについてはこのクラスの実装を呼び出してください。
+     *
+     * <p>拡張メソッドは{@link #doOptions}が返す<code>Allow</code>ヘッダーには含まれません。
+     * 拡張メソッドを公開する場合は<code>doOptions</code>もオーバーライドしてください。
+     *
+     * @implSpec デフォルト実装はHTTP "Not Implemented"(501)エラーを送信します。
+     *
+     * @param method    リクエストのHTTPメソッド名
+     *
+     * @param req   クライアントからのリクエストを含む{@link HttpServletRequest}オブジェクト
+     *
+     * @param resp  クライアントに返すレスポンスを含む{@link HttpServletResponse}オブジェクト
+     *
+     * @throws IOException   サーブレットがリクエストを処理しているときにI/Oエラーが発生した
+     *
+     * @throws ServletException  リクエストが処理できなかった
+     *
+     * @since Servlet 4.0.1
+     */
+    protected void doExtensionMethod(String method, HttpServletRequest req,
+                                     HttpServletResponse resp)
+        throws ServletException, IOException
+    {
+        //
+        // Note that this means NO servlet supports whatever
+        // method was requested, anywhere on this server.
+        //
+
+        String errMsg = MSG_NOT_IMPLEMENTED[0] + method + MSG_NOT_IMPLEMENTED[1];
+
+        resp.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED, errMsg);
+    }
+
+
+    private static void sendMethodNotSupported(HttpServletRequest req,
+                                               HttpServletResponse resp,
+                                               String msg)
+        throws IOException
+    {
+        String protocol = req.getProtocol();
+        if (protocol.endsWith("1.1")) {
+            resp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, msg);
         } else {
-            //
-            // Note that this means NO servlet supports whatever
-            // method was requested, anywhere on this server.
-            //
-
-            String errMsg = lStrings.getString("http.method_not_implemented");
-            Object[] errArgs = new Object[1];
-            errArgs[0] = method;
-            errMsg = MessageFormat.format(errMsg, errArgs);
-            
-            resp.sendError(HttpServletResponse.SC_NOT_IMPLEMENTED, errMsg);
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, msg);
+        }
+    }
+
+
+    /*
+     * Splits a MessageFormat pattern with a single {0} argument into the
+     * text before and after the argument.  Formatting with a marker takes
+     * care of the quoting rules of the pattern.
+     */
+    private static String[] splitMessage(String pattern) {
+        String marker = "\u0000";
+        String formatted = MessageFormat.format(pattern, marker);
+        int pos = formatted.indexOf(marker);
+        if (pos < 0) {
+            return new String[] { formatted, "" };
         }
+        return new String[] { formatted.substring(0, pos),
+                              formatted.substring(pos + marker.length()) };
     }
     
 
@@ -603,10 +807,442 @@ public abstract class HttpServlet extends GenericServlet
      */
     private void maybeSetLastModified(HttpServletResponse resp,
                                       long lastModified) {
-        if (resp.containsHeader(HEADER_LASTMOD))
+        if (resp.containsHeader(HeaderName.LAST_MODIFIED))
             return;
         if (lastModified >= 0)
-            resp.setDateHeader(HEADER_LASTMOD, lastModified);
+            resp.setDateHeader(HeaderName.LAST_MODIFIED.getName(),
+                               lastModified);
+    }
+
+
+    /*
+     * Serves the requested byte ranges from getRangeResource, or falls back
+     * to doGet when there is no usable Range header or no such resource.
+     */
+    private void doGetOrRanges(HttpServletRequest req,
+                               HttpServletResponse resp,
+                               String etag, long lastModified)
+        throws ServletException, IOException
+    {
+        String range = req.getHeader(HeaderName.RANGE);
+        long[] ranges = null;
+        if (range != null && ifRangeMatches(req, etag, lastModified)) {
+            ranges = parseRanges(range);
+        }
+        if (ranges == null) {
+            doGet(req, resp);
+            return;
+        }
+
+        SeekableByteChannel resource = getRangeResource(req, resp);
+        if (resource == null) {
+            doGet(req, resp);
+            return;
+        }
+        try {
+            sendRanges(resp, resource, ranges);
+        } finally {
+            resource.close();
+        }
+    }
+
+
+    private static boolean ifRangeMatches(HttpServletRequest req,
+                                          String etag, long lastModified) {
+        String ifRange = req.getHeader(HeaderName.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // strong comparison, a weak tag never matches
+            return etag != null && !etag.startsWith("W/")
+                && ifRange.equals(etag);
+        }
+        long date = getDateHeader(req, HeaderName.IF_RANGE);
+        return date != -1 && lastModified != -1
+            && lastModified / 1000 * 1000 == date;
+    }
+
+
+    /*
+     * Parses a byte ranges specifier into (first, last) pairs.  A suffix
+     * range is stored as (-1, length) and an open range as (first, -1).
+     * Returns null if the header is not a valid byte ranges specifier, in
+     * which case it is ignored.
+     */
+    private static long[] parseRanges(String header) {
+        if (!header.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+
+        long[] ranges = new long[8];
+        int count = 0;
+        int len = header.length();
+        int start = 6;
+        while (start <= len) {
+            int end = header.indexOf(',', start);
+            if (end < 0) {
+                end = len;
+            }
+            String spec = header.substring(start, end).trim();
+            start = end + 1;
+            if (spec.isEmpty()) {
+                continue;
+            }
+
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long first = parseDigits(spec, 0, dash);
+            long last = parseDigits(spec, dash + 1, spec.length());
+            if (first == -1 && last == -1) {
+                return null;
+            }
+            if ((dash > 0 && first == -1)
+                    || (dash + 1 < spec.length() && last == -1)) {
+                return null;
+            }
+            if (first != -1 && last != -1 && last < first) {
+                return null;
+            }
+
+            if (count == MAX_RANGES * 2) {
+                return null;
+            }
+            if (count == ranges.length) {
+                long[] grown = new long[count << 1];
+                System.arraycopy(ranges, 0, grown, 0, count);
+                ranges = grown;
+            }
+            ranges[count++] = first;
+            ranges[count++] = last;
+        }
+
+        if (count == 0) {
+            return null;
+        }
+        long[] result = new long[count];
+        System.arraycopy(ranges, 0, result, 0, count);
+        return result;
+    }
+
+
+    /*
+     * Returns the non negative decimal number in s[from, to), or -1 if the
+     * region is empty, contains anything but digits or overflows.
+     */
+    private static long parseDigits(String s, int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int d = s.charAt(i) - '0';
+            if (d < 0 || d > 9 || value > (Long.MAX_VALUE - d) / 10) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+
+    private static void sendRanges(HttpServletResponse resp,
+                                   SeekableByteChannel resource,
+                                   long[] ranges)
+        throws IOException
+    {
+        long size = resource.size();
+
+        // resolve against the resource size, keeping satisfiable ranges
+        long[] resolved = new long[ranges.length];
+        int count = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            long first = ranges[i];
+            long last = ranges[i + 1];
+            if (first == -1) {
+                if (last == 0 || size == 0) {
+                    continue;
+                }
+                first = Math.max(0, size - last);
+                last = size - 1;
+            } else {
+                if (first >= size) {
+                    continue;
+                }
+                if (last == -1 || last >= size) {
+                    last = size - 1;
+                }
+            }
+            resolved[count++] = first;
+            resolved[count++] = last;
+        }
+
+        resp.setHeader(HeaderName.ACCEPT_RANGES, "bytes");
+
+        if (count == 0) {
+            resp.setHeader(HeaderName.CONTENT_RANGE, "bytes */" + size);
+            resp.setStatus(
+                HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        // many overlapping ranges would send the same bytes over and over
+        // (RFC 7233 section 6.1), so such a request gets the whole entity
+        long total = 0;
+        for (int i = 0; i < count && total <= size; i += 2) {
+            total += resolved[i + 1] - resolved[i] + 1;
+        }
+        if (total > size) {
+            resp.setContentLengthLong(size);
+            copyRange(resource, resp.getOutputStream(), 0, size);
+            return;
+        }
+        count = mergeRanges(resolved, count);
+
+        resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+
+        if (count == 2) {
+            long first = resolved[0];
+            long last = resolved[1];
+            resp.setHeader(HeaderName.CONTENT_RANGE,
+                           "bytes " + first + "-" + last + "/" + size);
+            resp.setContentLengthLong(last - first + 1);
+            copyRange(resource, resp.getOutputStream(), first,
+                      last - first + 1);
+            return;
+        }
+
+        String contentType = resp.getContentType();
+        String boundary = UUID.randomUUID().toString();
+        String[] partHeaders = new String[count / 2];
+        long contentLength = 0;
+        for (int i = 0; i < count; i += 2) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(CRLF).append("--").append(boundary).append(CRLF);
+            if (contentType != null) {
+                sb.append("Content-Type: ").append(contentType).append(CRLF);
+            }
+            sb.append(HeaderName.CONTENT_RANGE.getName()).append(": bytes ")
+                .append(resolved[i]).append('-').append(resolved[i + 1])
+                .append('/').append(size).append(CRLF).append(CRLF);
+            partHeaders[i / 2] = sb.toString();
+            contentLength += partHeaders[i / 2].length()
+                + resolved[i + 1] - resolved[i] + 1;
+        }
+        String trailer = CRLF + "--" + boundary + "--" + CRLF;
+        contentLength += trailer.length();
+
+        resp.setContentType("multipart/byteranges; boundary=" + boundary);
+        resp.setContentLengthLong(contentLength);
+        ServletOutputStream out = resp.getOutputStream();
+        for (int i = 0; i < count; i += 2) {
+            out.print(partHeaders[i / 2]);
+            copyRange(resource, out, resolved[i],
+                      resolved[i + 1] - resolved[i] + 1);
+        }
+        out.print(trailer);
+    }
+
+
+    /*
+     * Sorts the (first, last) pairs in ranges[0, count) by their first byte
+     * and merges the ones that overlap or are adjacent.  Returns the number
+     * of values left in ranges.
+     */
+    private static int mergeRanges(long[] ranges, int count) {
+        for (int i = 2; i < count; i += 2) {
+            long first = ranges[i];
+            long last = ranges[i + 1];
+            int j = i - 2;
+            while (j >= 0 && ranges[j] > first) {
+                ranges[j + 2] = ranges[j];
+                ranges[j + 3] = ranges[j + 1];
+                j -= 2;
+            }
+            ranges[j + 2] = first;
+            ranges[j + 3] = last;
+        }
+
+        int merged = 0;
+        for (int i = 2; i < count; i += 2) {
+            if (ranges[i] <= ranges[merged + 1] + 1) {
+                ranges[merged + 1] = Math.max(ranges[merged + 1],
+                                              ranges[i + 1]);
+            } else {
+                merged += 2;
+                ranges[merged] = ranges[i];
+                ranges[merged + 1] = ranges[i + 1];
+            }
+        }
+        return merged + 2;
+    }
+
+
+    private static void copyRange(SeekableByteChannel resource,
+                                  ServletOutputStream out,
+                                  long position, long length)
+        throws IOException
+    {
+        if (resource instanceof FileChannel) {
+            // lets the container avoid copying through the heap
+            out.transferFrom((FileChannel) resource, position, length);
+            return;
+        }
+
+        resource.position(position);
+        ByteBuffer buffer = ByteBuffer.allocate(
+            (int) Math.min(length, RANGE_BUFFER_SIZE));
+        while (length > 0) {
+            buffer.clear();
+            if (buffer.capacity() > length) {
+                buffer.limit((int) length);
+            }
+            int n = resource.read(buffer);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            out.write(buffer.array(), 0, n);
+            length -= n;
+        }
+    }
+
+
+    /*
+     * Sets the ETag header field if it has not already been set, like
+     * maybeSetLastModified.
+     */
+    private void maybeSetETag(HttpServletResponse resp, String etag) {
+        if (etag == null || resp.containsHeader(HeaderName.ETAG))
+            return;
+        resp.setHeader(HeaderName.ETAG, etag);
+    }
+
+
+    private static boolean hasPreconditions(HttpServletRequest req) {
+        return req.getHeader(HeaderName.IF_MATCH) != null
+            || req.getHeader(HeaderName.IF_NONE_MATCH) != null
+            || req.getHeader(HeaderName.IF_UNMODIFIED_SINCE) != null;
+    }
+
+
+    /*
+     * Evaluates If-Match, If-Unmodified-Since and If-None-Match in the
+     * order given by RFC 7232, section 6.  Returns true if the request
+     * should be processed; otherwise the 304 or 412 status has been set.
+     * If-Modified-Since is left to the caller since it only applies to
+     * GET.
+     */
+    private boolean checkPreconditions(HttpServletRequest req,
+                                       HttpServletResponse resp,
+                                       boolean safeMethod, String etag,
+                                       long lastModified) {
+        // "*" only matches when the servlet knows the current representation
+        boolean exists = etag != null || lastModified != -1;
+        String ifMatch = req.getHeader(HeaderName.IF_MATCH);
+        if (ifMatch != null) {
+            if (!matchesETag(ifMatch, etag, exists, false)) {
+                resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+                return false;
+            }
+        } else if (lastModified != -1) {
+            long ifUnmodifiedSince =
+                getDateHeader(req, HeaderName.IF_UNMODIFIED_SINCE);
+            // Round down to the nearest second for a proper compare
+            if (ifUnmodifiedSince != -1
+                    && lastModified / 1000 * 1000 > ifUnmodifiedSince) {
+                resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+                return false;
+            }
+        }
+
+        String ifNoneMatch = req.getHeader(HeaderName.IF_NONE_MATCH);
+        if (ifNoneMatch != null
+                && matchesETag(ifNoneMatch, etag, exists, true)) {
+            if (safeMethod) {
+                maybeSetETag(resp, etag);
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            } else {
+                resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+
+    /*
+     * An invalid date is ignored, as required by RFC 7232.
+     */
+    private static long getDateHeader(HttpServletRequest req,
+                                      HeaderName name) {
+        try {
+            return req.getDateHeader(name.getName());
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+
+    /*
+     * Checks whether the entity tag matches one of the entity tags listed
+     * in an If-Match or If-None-Match header value, without splitting the
+     * header.  "*" matches any current representation, so it only
+     * matches if exists is true.
+     */
+    private static boolean matchesETag(String header, String etag,
+                                       boolean exists,
+                                       boolean weakComparison) {
+        int len = header.length();
+        int i = 0;
+        while (i < len && (header.charAt(i) == ' ' || header.charAt(i) == '\t')) {
+            i++;
+        }
+        if (i < len && header.charAt(i) == '*') {
+            return exists;
+        }
+        if (etag == null) {
+            return false;
+        }
+
+        boolean weak = etag.startsWith("W/");
+        if (weak && !weakComparison) {
+            return false;
+        }
+        int opaqueStart = weak ? 2 : 0;
+        int opaqueLength = etag.length() - opaqueStart;
+
+        while (i < len) {
+            char c = header.charAt(i);
+            if (c == ',' || c == ' ' || c == '\t') {
+                i++;
+                continue;
+            }
+            boolean tagWeak = false;
+            if (c == 'W' && header.startsWith("W/", i)) {
+                tagWeak = true;
+                i += 2;
+            }
+            if (i >= len || header.charAt(i) != '"') {
+                // malformed list
+                return false;
+            }
+            int end = header.indexOf('"', i + 1);
+            if (end < 0) {
+                return false;
+            }
+            int tagLength = end + 1 - i;
+            if ((weakComparison || !tagWeak)
+                    && tagLength == opaqueLength
+                    && header.regionMatches(i, etag, opaqueStart, tagLength)) {
+                return true;
+            }
+            i = end + 1;
+        }
+        return false;
     }
    
     
@@ -656,6 +1292,7 @@ class NoBodyResponse extends HttpServletResponseWrapper {
         = ResourceBundle.getBundle("javax.servlet.http.LocalStrings");
 
     private NoBodyOutputStream noBody;
+    private NoBodyWriter countingWriter;
     private PrintWriter writer;
     private boolean didSetContentLength;
     private boolean usingOutputStream;
@@ -669,10 +1306,16 @@ class NoBodyResponse extends HttpServletResponseWrapper {
     // file private
     void setContentLength() {
         if (!didSetContentLength) {
+            // Flush first: an encoding writer may still hold buffered
+            // chars that have not reached noBody yet
             if (writer != null) {
                 writer.flush();
             }
-            setContentLength(noBody.getContentLength());
+            int contentLength = noBody.getContentLength();
+            if (countingWriter != null) {
+                contentLength += countingWriter.getContentLength();
+            }
+            setContentLength(contentLength);
         }
     }
 
@@ -739,9 +1382,21 @@ class NoBodyResponse extends HttpServletResponseWrapper {
         }
 
         if (writer == null) {
-            OutputStreamWriter w = new OutputStreamWriter(
-                noBody, getCharacterEncoding());
-            writer = new PrintWriter(w);
+            String encoding = getCharacterEncoding();
+            Charset charset = null;
+            try {
+                charset = Charset.forName(encoding);
+            } catch (IllegalArgumentException e) {
+                // let OutputStreamWriter report the bad encoding
+            }
+            if (NoBodyWriter.supports(charset)) {
+                countingWriter = new NoBodyWriter(charset);
+                writer = new PrintWriter(countingWriter);
+            } else {
+                OutputStreamWriter w = new OutputStreamWriter(
+                    noBody, encoding);
+                writer = new PrintWriter(w);
+            }
         }
 
         return writer;
@@ -806,3 +1461,84 @@ class NoBodyOutputStream extends ServletOutputStream {
 
     }
 }
+
+
+/*
+ * Writer for HEAD responses that computes the encoded length of the
+ * characters written without encoding them.  Only used for charsets whose
+ * encoded length is known per character; unmappable characters count as
+ * the single replacement byte OutputStreamWriter would have produced.
+ */
+// file private
+class NoBodyWriter extends Writer {
+
+    private final boolean utf8;
+    private int contentLength = 0;
+    private boolean pendingHighSurrogate;
+
+    // file private
+    static boolean supports(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset)
+            || StandardCharsets.ISO_8859_1.equals(charset)
+            || StandardCharsets.US_ASCII.equals(charset);
+    }
+
+    // file private
+    NoBodyWriter(Charset charset) {
+        utf8 = StandardCharsets.UTF_8.equals(charset);
+    }
+
+    // file private
+    int getContentLength() {
+        return contentLength;
+    }
+
+    private void count(char c) {
+        if (pendingHighSurrogate) {
+            pendingHighSurrogate = false;
+            if (Character.isLowSurrogate(c)) {
+                contentLength += utf8 ? 4 : 1;
+                return;
+            }
+            // unpaired high surrogate
+            contentLength++;
+        }
+
+        if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = true;
+        } else if (!utf8 || c < 0x80 || Character.isLowSurrogate(c)) {
+            contentLength++;
+        } else if (c < 0x800) {
+            contentLength += 2;
+        } else {
+            contentLength += 3;
+        }
+    }
+
+    @Override
+    public void write(int c) {
+        count((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            count(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            count(str.charAt(i));
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -60,6 +60,7 @@ package javax.servlet.http;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.BiConsumer;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
@@ -120,6 +121,62 @@ public interface HttpServletRequest extends ServletRequest {
      */
     public Cookie[] getCookies();
 
+
+    /**
+     * このリクエストでクライアントが送信した、指定された名前の<code>Cookie</code>の値を返します。
+     * 指定された名前のCookieが送信されていない場合は<code>null</code>を返します。
+     *
+     * <p>同じ名前のCookieが複数送信された場合は最初のCookieの値を返します。
+     * {@link #getCookies}と異なり、このメソッドは他のCookieの<code>Cookie</code>オブジェクトを作成しません。
+     *
+     * @implSpec デフォルト実装は<code>Cookie</code>ヘッダーの値を先頭から走査し、指定された名前のCookieの値を返します。
+     * RFC 6265の5.4節に従ってCookieは<code>;</code>だけで区切られ、値を囲む二重引用符は取り除かれます。
+     * <code>,</code>はCookieの値の一部として扱われます。
+     *
+     * @param name  Cookieの名前
+     *
+     * @return  指定された名前のCookieの値、送信されたCookieがない場合は<code>null</code>
+     *
+     * @since Servlet 4.0.1
+     */
+    default public String getCookieValue(String name) {
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        Enumeration<String> headers = getHeaders(HeaderName.COOKIE.getName());
+        if (headers == null) {
+            return null;
+        }
+        while (headers.hasMoreElements()) {
+            String value = CookieScanner.findValue(headers.nextElement(), name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * このリクエストでクライアントが送信した、指定された名前の<code>Cookie</code>オブジェクトを返します。
+     * 指定された名前のCookieが送信されていない場合は<code>null</code>を返します。
+     *
+     * <p>同じ名前のCookieが複数送信された場合は最初のCookieを返します。
+     *
+     * @implSpec デフォルト実装は{@link #getCookieValue}で取得した値から<code>Cookie</code>オブジェクトを作成します。
+     *
+     * @param name  Cookieの名前
+     *
+     * @return  指定された名前の<code>Cookie</code>オブジェクト、送信されたCookieがない場合は<code>null</code>
+     *
+     * @throws IllegalArgumentException <code>name</code>が{@link Cookie#Cookie}で使用できない名前の場合
+     *
+     * @since Servlet 4.0.1
+     */
+    default public Cookie getCookie(String name) {
+        String value = getCookieValue(name);
+        return value == null ? null : new Cookie(name, value);
+    }
+
     /**
      * リクエストヘッダーの指定された値の<code>Date</code>オブジェクトを表す<code>long</code> 値を返します。
      * このメソッドは<code>If-Modified-Since</code>のような日付を含むヘッダーに使用します。
@@ -176,6 +233,94 @@ public interface HttpServletRequest extends ServletRequest {
      */
     public Enumeration<String> getHeaderNames();
 
+    /**
+     * 指定されたリクエストヘッダーの値を<code>String</code>として返します。
+     *
+     * <p>{@link #getHeader(String)}と同じですが、サーブレットコンテナは{@link HeaderName}があらかじめ計算している小文字の名前とハッシュ値を使用して、
+     * 大文字小文字を区別しない比較を省略することができます。
+     *
+     * @implSpec デフォルト実装は<code>getHeader(name.getName())</code>を返します。
+     *
+     * @param name  ヘッダーの名前
+     *
+     * @return  要求されたヘッダーの値を含む<code>String</code>、リクエストにその名前のヘッダーがない場合は<code>null</code>
+     *
+     * @since Servlet 4.0.1
+     */
+    default public String getHeader(HeaderName name) {
+        return getHeader(name.getName());
+    }
+
+    /**
+     * 指定されたリクエストヘッダーのすべての値を<code>List</code>として返します。
+     *
+     * <p>返される<code>List</code>は変更できません。
+     *
+     * @implSpec デフォルト実装は{@link #getHeaders}の結果を<code>List</code>に変換して返します。
+     *
+     * @param name  ヘッダーの名前
+     *
+     * @return  要求されたヘッダーの値の<code>List</code>、リクエストにその名前のヘッダーがない場合やサーブレットコンテナがヘッダーへのアクセスを許可しない場合は空の<code>List</code>
+     *
+     * @since Servlet 4.0.1
+     */
+    default public List<String> getHeaderList(String name) {
+        Enumeration<String> values = getHeaders(name);
+        if (values == null || !values.hasMoreElements()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Collections.list(values));
+    }
+
+    /**
+     * リクエストに含まれるすべてのヘッダーの名前を<code>List</code>として返します。
+     *
+     * <p>返される<code>List</code>は変更できません。
+     *
+     * @implSpec デフォルト実装は{@link #getHeaderNames}の結果を<code>List</code>に変換して返します。
+     *
+     * @return  すべてのヘッダー名の<code>List</code>、リクエストにヘッダーがない場合やサーブレットコンテナがヘッダーへのアクセスを許可しない場合は空の<code>List</code>
+     *
+     * @since Servlet 4.0.1
+     */
+    default public List<String> getHeaderNameList() {
+        Enumeration<String> names = getHeaderNames();
+        if (names == null || !names.hasMoreElements()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Collections.list(names));
+    }
+
+    /**
+     * リクエストに含まれるすべてのヘッダーの名前と値の組み合わせごとに指定されたアクションを実行します。
+     *
+     * <p>同じ名前のヘッダーが複数ある場合、アクションはそれぞれの値ごとに呼び出されます。
+     * サーブレットコンテナはこのメソッドをオーバーライドして、<code>Enumeration</code>を作成せずに内部のヘッダーを直接走査することができます。
+     *
+     * @implSpec デフォルト実装は{@link #getHeaderNames}と{@link #getHeaders}を使用します。
+     * サーブレットコンテナがヘッダーへのアクセスを許可しない場合は何もしません。
+     *
+     * @param action    ヘッダーの名前と値を受け取るアクション
+     *
+     * @since Servlet 4.0.1
+     */
+    default public void forEachHeader(BiConsumer<String, String> action) {
+        Enumeration<String> names = getHeaderNames();
+        if (names == null) {
+            return;
+        }
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            Enumeration<String> values = getHeaders(name);
+            if (values == null) {
+                continue;
+            }
+            while (values.hasMoreElements()) {
+                action.accept(name, values.nextElement());
+            }
+        }
+    }
+
     /**
      * リクエストヘッダーの指定された値を<code>int</code>として返します。
      * 
@@ -60,7 +60,9 @@ package javax.servlet.http;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.BiConsumer;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
 import javax.servlet.ServletRequestWrapper;
 
 /**
@@ -76,6 +78,50 @@ import javax.servlet.ServletRequestWrapper;
 
 public class HttpServletRequestWrapper extends ServletRequestWrapper implements HttpServletRequest {
 
+    /*
+     * Whether a wrapper class overrides any of the cookie or header
+     * accessors.  The Servlet 4.0.1 variants skip wrappers for which this
+     * is false and call the first request down the chain that may answer
+     * differently, instead of delegating through every layer.  A wrapper
+     * that overrides getRequest() is never skipped, so that skipping it
+     * reaches the same request as delegating through it would.
+     */
+    private static final ClassValue<Boolean> COOKIE_OVERRIDES =
+        new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                return overrides(type, "getRequest")
+                    || overrides(type, "getCookies")
+                    || overrides(type, "getCookieValue", String.class)
+                    || overrides(type, "getCookie", String.class);
+            }
+        };
+
+    // a wrapper that only rewrites the Cookie header is a cookie source too
+    private static final ClassValue<Boolean> COOKIE_SOURCE_OVERRIDES =
+        new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                return COOKIE_OVERRIDES.get(type)
+                    || overrides(type, "getHeaders", String.class);
+            }
+        };
+
+    private static final ClassValue<Boolean> HEADER_OVERRIDES =
+        new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                return overrides(type, "getRequest")
+                    || overrides(type, "getHeader", String.class)
+                    || overrides(type, "getHeaders", String.class)
+                    || overrides(type, "getHeaderNames")
+                    || overrides(type, "getHeader", HeaderName.class)
+                    || overrides(type, "getHeaderList", String.class)
+                    || overrides(type, "getHeaderNameList")
+                    || overrides(type, "forEachHeader", BiConsumer.class);
+            }
+        };
+
     /** 
      * 与えられたリクエストをラップしてリクエストオブジェクトを生成します。
      * 
@@ -91,6 +137,29 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
         return (HttpServletRequest) super.getRequest();
     }
 
+    private static boolean overrides(Class<?> type, String name,
+                                     Class<?>... parameterTypes) {
+        return WrapperOverrides.isOverridden(type,
+            HttpServletRequestWrapper.class, name, parameterTypes);
+    }
+
+    /*
+     * Returns this wrapper if its class overrides one of the methods
+     * tracked by overrides, otherwise the first wrapped request that does
+     * or the innermost request.
+     */
+    private HttpServletRequest bypass(ClassValue<Boolean> overrides) {
+        if (overrides.get(getClass())) {
+            return this;
+        }
+        ServletRequest request = getRequest();
+        while (request instanceof HttpServletRequestWrapper
+                && !overrides.get(request.getClass())) {
+            request = ((HttpServletRequestWrapper) request).getRequest();
+        }
+        return (HttpServletRequest) request;
+    }
+
     /**
      * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのgetAuthType()を返すことです。
      */
@@ -107,6 +176,63 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
         return this._getHttpServletRequest().getCookies();
     }
 
+    /**
+     * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのgetCookieValue(String name)を返すことです。
+     *
+     * <p>このクラスのサブクラスが<code>getCookies</code>、<code>getCookieValue</code>、<code>getCookie</code>のいずれかをオーバーライドしている場合は、それらのメソッドを使用して結果を求めます。
+     * これらのメソッドをオーバーライドせずに<code>getHeaders</code>をオーバーライドしている場合は、
+     * {@link HttpServletRequest}のデフォルト実装と同じように<code>getHeaders</code>が返す<code>Cookie</code>ヘッダーから結果を求めます。
+     * どちらでもない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のリクエストオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public String getCookieValue(String name) {
+        HttpServletRequest target = bypass(COOKIE_SOURCE_OVERRIDES);
+        if (target != this) {
+            return target.getCookieValue(name);
+        }
+        if (!COOKIE_OVERRIDES.get(getClass())) {
+            // only getHeaders is overridden, scan the Cookie header it returns
+            return HttpServletRequest.super.getCookieValue(name);
+        }
+        Cookie cookie = getCookie(name);
+        return cookie == null ? null : cookie.getValue();
+    }
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのgetCookie(String name)を返すことです。
+     *
+     * <p>このクラスのサブクラスが<code>getCookies</code>、<code>getCookieValue</code>、<code>getCookie</code>のいずれかをオーバーライドしている場合は、それらのメソッドを使用して結果を求めます。
+     * これらのメソッドをオーバーライドせずに<code>getHeaders</code>をオーバーライドしている場合は、
+     * {@link HttpServletRequest}のデフォルト実装と同じように<code>getHeaders</code>が返す<code>Cookie</code>ヘッダーから結果を求めます。
+     * どちらでもない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のリクエストオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public Cookie getCookie(String name) {
+        HttpServletRequest target = bypass(COOKIE_SOURCE_OVERRIDES);
+        if (target != this) {
+            return target.getCookie(name);
+        }
+        if (!COOKIE_OVERRIDES.get(getClass())) {
+            return HttpServletRequest.super.getCookie(name);
+        }
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        Cookie[] cookies = getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (name.equals(cookie.getName())) {
+                    return cookie;
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのgetDateHeader(String name)を返すことです。
      */
@@ -138,6 +264,75 @@ public class HttpServletRequestWrapper extends ServletRequestWrapper implements
     public Enumeration<String> getHeaderNames() {
         return this._getHttpServletRequest().getHeaderNames();
     }
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのgetHeader(HeaderName name)を返すことです。
+     *
+     * <p>このクラスのサブクラスがヘッダーを取得するメソッドのいずれかをオーバーライドしている場合は、それらのメソッドを使用して結果を求めます。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のリクエストオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public String getHeader(HeaderName name) {
+        HttpServletRequest target = bypass(HEADER_OVERRIDES);
+        if (target != this) {
+            return target.getHeader(name);
+        }
+        return getHeader(name.getName());
+    }
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのgetHeaderList(String name)を返すことです。
+     *
+     * <p>このクラスのサブクラスがヘッダーを取得するメソッドのいずれかをオーバーライドしている場合は、それらのメソッドを使用して結果を求めます。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のリクエストオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public List<String> getHeaderList(String name) {
+        HttpServletRequest target = bypass(HEADER_OVERRIDES);
+        if (target != this) {
+            return target.getHeaderList(name);
+        }
+        return HttpServletRequest.super.getHeaderList(name);
+    }
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのgetHeaderNameList()を返すことです。
+     *
+     * <p>このクラスのサブクラスがヘッダーを取得するメソッドのいずれかをオーバーライドしている場合は、それらのメソッドを使用して結果を求めます。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のリクエストオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public List<String> getHeaderNameList() {
+        HttpServletRequest target = bypass(HEADER_OVERRIDES);
+        if (target != this) {
+            return target.getHeaderNameList();
+        }
+        return HttpServletRequest.super.getHeaderNameList();
+    }
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトのforEachHeader(BiConsumer action)を呼び出すことです。
+     *
+     * <p>このクラスのサブクラスがヘッダーを取得するメソッドのいずれかをオーバーライドしている場合は、それらのメソッドを使用して結果を求めます。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のリクエストオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public void forEachHeader(BiConsumer<String, String> action) {
+        HttpServletRequest target = bypass(HEADER_OVERRIDES);
+        if (target != this) {
+            target.forEachHeader(action);
+            return;
+        }
+        HttpServletRequest.super.forEachHeader(action);
+    }
     
     /**
      * このメソッドのデフォルトの動作はラップされたリクエストオブジェクトの getIntHeader(String name)を返すことです。
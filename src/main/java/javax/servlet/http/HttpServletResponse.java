@@ -95,6 +95,23 @@ public interface HttpServletResponse extends ServletResponse {
      */
     public boolean containsHeader(String name);
 
+    /**
+     * 指定された名前のレスポンスヘッダーがすでに設定されているかどうかを示すbooleanを返します。
+     *
+     * <p>{@link #containsHeader(String)}と同じですが、サーブレットコンテナは{@link HeaderName}があらかじめ計算している小文字の名前とハッシュ値を使用して、
+     * 大文字小文字を区別しない比較を省略することができます。
+     *
+     * @implSpec デフォルト実装は<code>containsHeader(name.getName())</code>を返します。
+     *
+     * @param	name	ヘッダーの名前
+     * @return		名前付きのレスポンスヘッダーがすでに設定されている場合は<code>true</code>、そうでない場合は<code>false</code>
+     *
+     * @since Servlet 4.0.1
+     */
+    default public boolean containsHeader(HeaderName name) {
+        return containsHeader(name.getName());
+    }
+
     /**
      * 指定されたURLをセッションIDを含めてエンコードします。エンコードが不要な場合はURLをそのまま返します。
      * このメソッドの実装にはセッションIDをURLにエンコードする必要があるかどうかを判断するロジックが含まれています。
@@ -251,6 +268,25 @@ public interface HttpServletResponse extends ServletResponse {
      * @see #addHeader
      */
     public void setHeader(String name, String value);
+
+    /**
+     * 指定された名前と値を持つレスポンスヘッダーを設定します。
+     *
+     * <p>{@link #setHeader(String, String)}と同じですが、サーブレットコンテナは{@link HeaderName}があらかじめ計算している小文字の名前とハッシュ値、
+     * エンコード済みのバイト列を使用することができます。
+     *
+     * @implSpec デフォルト実装は<code>setHeader(name.getName(), value)</code>を呼び出します。
+     *
+     * @param	name	ヘッダーの名前
+     * @param	value	ヘッダーに追加する値
+     *
+     * @see #setHeader(String, String)
+     *
+     * @since Servlet 4.0.1
+     */
+    default public void setHeader(HeaderName name, String value) {
+        setHeader(name.getName(), value);
+    }
     
     /**
      * 指定された名前と値を持つレスポンスヘッダーを設定します。
@@ -264,6 +300,25 @@ public interface HttpServletResponse extends ServletResponse {
      */
     public void addHeader(String name, String value);
 
+    /**
+     * 指定された名前と値を持つレスポンスヘッダーを追加します。
+     *
+     * <p>{@link #addHeader(String, String)}と同じですが、サーブレットコンテナは{@link HeaderName}があらかじめ計算している小文字の名前とハッシュ値、
+     * エンコード済みのバイト列を使用することができます。
+     *
+     * @implSpec デフォルト実装は<code>addHeader(name.getName(), value)</code>を呼び出します。
+     *
+     * @param	name	ヘッダーの名前
+     * @param	value	ヘッダーに追加する値
+     *
+     * @see #addHeader(String, String)
+     *
+     * @since Servlet 4.0.1
+     */
+    default public void addHeader(HeaderName name, String value) {
+        addHeader(name.getName(), value);
+    }
+
     /**
      * 指定された名前と整数値を持つレスポンスヘッダーを設定します。
      * ヘッダーがすでに設定されている場合は新しい値が前の値を上書きします。 
@@ -348,6 +403,24 @@ public interface HttpServletResponse extends ServletResponse {
      */
     public String getHeader(String name); 
 
+    /**
+     * 指定された名前でレスポンスヘッダーの値を取得します。
+     *
+     * <p>{@link #getHeader(String)}と同じですが、サーブレットコンテナは{@link HeaderName}があらかじめ計算している小文字の名前とハッシュ値を使用して、
+     * 大文字小文字を区別しない比較を省略することができます。
+     *
+     * @implSpec デフォルト実装は<code>getHeader(name.getName())</code>を返します。
+     *
+     * @param name 値を返されるレスポンスヘッダーの名前
+     *
+     * @return 与えられた名前のレスポンスヘッダーの値、このレスポンスのヘッダーに与えられた名前で値が設定されてない場合は<tt>null</tt>
+     *
+     * @since Servlet 4.0.1
+     */
+    default public String getHeader(HeaderName name) {
+        return getHeader(name.getName());
+    }
+
     /**
      * 指定された名前でレスポンスヘッダーの値を取得します。
      *
@@ -62,6 +62,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.Map;
 import java.util.function.Supplier;
+import javax.servlet.ServletResponse;
 import javax.servlet.ServletResponseWrapper;
 
 /**
@@ -77,6 +78,32 @@ import javax.servlet.ServletResponseWrapper;
 
 public class HttpServletResponseWrapper extends ServletResponseWrapper implements HttpServletResponse {
 
+    /*
+     * Whether a wrapper class overrides any of the header accessors.  The
+     * HeaderName variants skip wrappers for which this is false and call
+     * the first response down the chain that may behave differently,
+     * instead of delegating through every layer.  A wrapper that overrides
+     * getResponse() is never skipped, so that skipping it reaches the same
+     * response as delegating through it would.
+     */
+    private static final ClassValue<Boolean> HEADER_OVERRIDES =
+        new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                return overrides(type, "getResponse")
+                    || overrides(type, "containsHeader", String.class)
+                    || overrides(type, "setHeader", String.class, String.class)
+                    || overrides(type, "addHeader", String.class, String.class)
+                    || overrides(type, "getHeader", String.class)
+                    || overrides(type, "containsHeader", HeaderName.class)
+                    || overrides(type, "setHeader",
+                                 HeaderName.class, String.class)
+                    || overrides(type, "addHeader",
+                                 HeaderName.class, String.class)
+                    || overrides(type, "getHeader", HeaderName.class);
+            }
+        };
+
     /** 
      * 指定されたレスポンスオブジェクトをラップするレスポンスアダプタを作成します。
      * @throws java.lang.IllegalArgumentException responseがnull
@@ -90,6 +117,29 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
     private HttpServletResponse _getHttpServletResponse() {
         return (HttpServletResponse) super.getResponse();
     }
+
+    private static boolean overrides(Class<?> type, String name,
+                                     Class<?>... parameterTypes) {
+        return WrapperOverrides.isOverridden(type,
+            HttpServletResponseWrapper.class, name, parameterTypes);
+    }
+
+    /*
+     * Returns this wrapper if its class overrides one of the header
+     * accessors, otherwise the first wrapped response that does or the
+     * innermost response.
+     */
+    private HttpServletResponse bypass() {
+        if (HEADER_OVERRIDES.get(getClass())) {
+            return this;
+        }
+        ServletResponse response = getResponse();
+        while (response instanceof HttpServletResponseWrapper
+                && !HEADER_OVERRIDES.get(response.getClass())) {
+            response = ((HttpServletResponseWrapper) response).getResponse();
+        }
+        return (HttpServletResponse) response;
+    }
     
     /**
      * このメソッドのデフォルトの動作はラップされたレスポンスオブジェクトのaddCookie(Cookie cookie)を呼び出すことです。
@@ -106,6 +156,23 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
     public boolean containsHeader(String name) {
         return this._getHttpServletResponse().containsHeader(name);
     }
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたレスポンスオブジェクトのcontainsHeader(HeaderName name)を呼び出すことです。
+     *
+     * <p>このクラスのサブクラスがヘッダーを操作するメソッドのいずれかをオーバーライドしている場合は、<code>String</code>の名前を受け取るメソッドを呼び出します。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のレスポンスオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public boolean containsHeader(HeaderName name) {
+        HttpServletResponse target = bypass();
+        if (target != this) {
+            return target.containsHeader(name);
+        }
+        return containsHeader(name.getName());
+    }
     
     /**
      * このメソッドのデフォルトの動作はラップされたレスポンスオブジェクトのencodeURL(String url)を呼び出すことです。
@@ -192,6 +259,24 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
     public void setHeader(String name, String value) {
         this._getHttpServletResponse().setHeader(name, value);
     }
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたレスポンスオブジェクトのsetHeader(HeaderName name, String value)を呼び出すことです。
+     *
+     * <p>このクラスのサブクラスがヘッダーを操作するメソッドのいずれかをオーバーライドしている場合は、<code>String</code>の名前を受け取るメソッドを呼び出します。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のレスポンスオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public void setHeader(HeaderName name, String value) {
+        HttpServletResponse target = bypass();
+        if (target != this) {
+            target.setHeader(name, value);
+            return;
+        }
+        setHeader(name.getName(), value);
+    }
     
     /**
      * このメソッドのデフォルトの動作はラップされたレスポンスオブジェクトのaddHeader(String name, String value)を返すことです。
@@ -200,6 +285,24 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
     public void addHeader(String name, String value) {
         this._getHttpServletResponse().addHeader(name, value);
     }
+
+    /**
+     * このメソッドのデフォルトの動作はラップされたレスポンスオブジェクトのaddHeader(HeaderName name, String value)を呼び出すことです。
+     *
+     * <p>このクラスのサブクラスがヘッダーを操作するメソッドのいずれかをオーバーライドしている場合は、<code>String</code>の名前を受け取るメソッドを呼び出します。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のレスポンスオブジェクトを直接呼び出します。
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public void addHeader(HeaderName name, String value) {
+        HttpServletResponse target = bypass();
+        if (target != this) {
+            target.addHeader(name, value);
+            return;
+        }
+        addHeader(name.getName(), value);
+    }
     
     /**
      * このメソッドのデフォルトの動作はラップされたレスポンスオブジェクトのsetIntHeader(String name, int value)を呼び出すことです。
@@ -262,6 +365,27 @@ public class HttpServletResponseWrapper extends ServletResponseWrapper implement
         return _getHttpServletResponse().getHeader(name);
     }
 
+    /**
+     * このメソッドのデフォルトの動作はラップされたレスポンスオブジェクトのgetHeader(HeaderName name)を呼び出すことです。
+     *
+     * <p>このクラスのサブクラスがヘッダーを操作するメソッドのいずれかをオーバーライドしている場合は、<code>String</code>の名前を受け取るメソッドを呼び出します。
+     * そうでない場合は、これらのメソッドをオーバーライドしていない途中のラッパーを経由せずに、内側のレスポンスオブジェクトを直接呼び出します。
+     *
+     * @param name 値を返されるレスポンスヘッダーの名前
+     *
+     * @return 与えられた名前のレスポンスヘッダーの値、このレスポンスのヘッダーに与えられた名前で値が設定されてない場合は<tt>null</tt>
+     *
+     * @since Servlet 4.0.1
+     */
+    @Override
+    public String getHeader(HeaderName name) {
+        HttpServletResponse target = bypass();
+        if (target != this) {
+            return target.getHeader(name);
+        }
+        return getHeader(name.getName());
+    }
+
     /**
      * このメソッドのデフォルトの動作はラップされたレスポンスオブジェクトの{@link HttpServletResponse#getHeaders} を呼び出すことです。
      *
@@ -281,6 +281,35 @@ public interface HttpSession {
     public void removeValue(String name);
 
 
+    /**
+     * 指定された名前で存在するオブジェクトが、セッションに追加されたあとに変更されたことをコンテナに通知します。
+     *
+     * <p>セッションを複製したり永続化したりするコンテナは、<code>setAttribute</code>や<code>removeAttribute</code>によって
+     * どの属性が変更されたかを知ることができますが、可変なオブジェクトがその場で変更されたことは知ることができません。
+     * アプリケーションはセッションに格納されたオブジェクトを変更したあとにこのメソッドを呼び出すことで、
+     * コンテナが変更された属性だけを複製できるようにします。
+     * セッションに指定された名前で存在するオブジェクトがない場合はこのメソッドは何も行いません。
+     *
+     * @implSpec デフォルト実装は同じ名前で同じオブジェクトを<code>setAttribute</code>で設定し直します。
+     * そのため<code>HttpSessionAttributeListener.attributeReplaced</code>が通知されます。
+     * コンテナはこのメソッドをオーバーライドして、リスナーに通知せずに属性を変更済みとして記録することができます。
+     *
+     * @param name				変更されたオブジェクトの名前
+     *
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     *
+     * @see HttpSessionChangeTracker
+     *
+     * @since Servlet 4.0.1
+     */
+    default public void markDirty(String name) {
+        Object value = getAttribute(name);
+        if (value != null) {
+            setAttribute(name, value);
+        }
+    }
+
+
     /**
      * このセッションを保存されているすべての値を取り除いてから無効化します。
      *
@@ -0,0 +1,98 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 特定の型のセッション属性の値をコンパクトな形式で書き出したり読み込んだりするためのインターフェースです。
+ *
+ * <p>コンテナはセッションを永続化したり複製したりする際に{@link HttpSessionSerializer}を通じてこのインターフェースを使用します。
+ * 登録されたコーデックは、値のクラスが{@link #getType}と一致する属性に対してJavaのシリアライズの代わりに使用されます。
+ *
+ * <p>実装は{@link HttpSessionSerializer#register}で登録するか、
+ * JARファイル内の<tt>META-INF/services</tt>ディレクトリにあるこのインターフェースの完全修飾クラス名の名前が付けられたリソースによって宣言し、
+ * {@link HttpSessionSerializer#load}で検出させることができます。
+ * 実装はスレッドセーフである必要があります。
+ *
+ * @param <T> コーデックが扱う値の型
+ *
+ * @see HttpSessionSerializer
+ *
+ * @since Servlet 4.0.1
+ */
+public interface HttpSessionAttributeCodec<T> {
+
+    /**
+     * このコーデックが扱う値のクラスを返します。
+     *
+     * <p>書き出されたデータにはこのクラスの名前が含まれます。
+     * 読み込む側でも同じ名前のクラスのコーデックが登録されている必要があります。
+     *
+     * @return このコーデックが扱う値のクラス
+     */
+    public Class<T> getType();
+
+    /**
+     * 指定された値を書き出します。
+     *
+     * @param value 書き出す値、<code>null</code>ではない
+     * @param out   書き出し先
+     *
+     * @throws IOException 入出力エラーが発生した場合
+     */
+    public void encode(T value, DataOutput out) throws IOException;
+
+    /**
+     * {@link #encode}で書き出された値を読み込みます。
+     *
+     * <p>このメソッドは<code>encode</code>が書き出したバイトをちょうどすべて読み込む必要があります。
+     *
+     * @param in    読み込み元
+     *
+     * @return 読み込んだ値
+     *
+     * @throws IOException 入出力エラーが発生した場合、またはデータが不正な場合
+     */
+    public T decode(DataInput in) throws IOException;
+}
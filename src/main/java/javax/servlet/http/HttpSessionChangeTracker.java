@@ -0,0 +1,312 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * セッションごとに変更された属性を記録し、その差分を{@link HttpSessionDelta}として取り出すためのリスナーです。
+ *
+ * <p>このクラスのインスタンスをリスナーとして登録すると、<code>setAttribute</code>と<code>removeAttribute</code>による変更が
+ * {@link HttpSessionAttributeListener}を通じて記録されます。
+ * 可変なオブジェクトをその場で変更した場合は{@link HttpSession#markDirty}か{@link #markDirty}を呼び出します。
+ * セッションを複製するコンテナは、リクエストの処理が終わるたびに{@link #drain}を呼び出し、
+ * そのリクエストで変更された属性だけを複製することができます。
+ *
+ * <p>記録はセッションが破棄されると削除され、セッションIDが変更されると新しいIDに引き継がれます。
+ * コンテナがセッション全体を永続化または複製する場合は、書き出す前に{@link #beforeReplicate}を、
+ * 読み込んだあとに{@link #afterActivate}を呼び出してください。
+ * セッション全体が書き出されるか読み込まれるため、それまでの記録は破棄されます。
+ * <code>HttpSessionActivationListener</code>の通知はセッションの属性にしか配信されないため、
+ * これらはリスナーのメソッドではなく、コンテナが直接呼び出すメソッドです。
+ *
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @see HttpSessionDelta
+ *
+ * @since Servlet 4.0.1
+ */
+public class HttpSessionChangeTracker implements HttpSessionAttributeListener,
+        HttpSessionListener, HttpSessionIdListener {
+
+    private final ConcurrentMap<String, Changes> changes =
+        new ConcurrentHashMap<>();
+
+    /**
+     * 指定されたセッションの指定された名前の属性を変更済みとして記録します。
+     *
+     * <p>{@link HttpSession#markDirty}と異なり、リスナーには通知されません。
+     *
+     * @param session   セッション
+     * @param name      変更された属性の名前
+     */
+    public void markDirty(HttpSession session, String name) {
+        changesFor(session.getId()).changed(name);
+    }
+
+    /**
+     * 指定されたセッションに、まだ取り出されていない変更があるかどうかを返します。
+     *
+     * @param session   セッション
+     *
+     * @return  変更がある場合は<code>true</code>
+     */
+    public boolean isDirty(HttpSession session) {
+        Changes c = changes.get(session.getId());
+        return c != null && !c.isEmpty();
+    }
+
+    /**
+     * 指定されたセッションの変更を取り出し、記録を消去します。
+     *
+     * <p>変更された属性の値はこのメソッドを呼び出した時点のセッションから取得されます。
+     * 変更済みとして記録されたあとに削除された属性は、削除された属性として扱われます。
+     *
+     * @param session   セッション
+     *
+     * @return  記録されていた変更、変更がない場合は空の<code>HttpSessionDelta</code>
+     *
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     */
+    public HttpSessionDelta drain(HttpSession session) {
+        String id = session.getId();
+        Map<String, Object> changed = new LinkedHashMap<>();
+        Set<String> removed = new LinkedHashSet<>();
+        Changes c = changes.get(id);
+        if (c != null) {
+            Set<String> names;
+            synchronized (c) {
+                names = new LinkedHashSet<>(c.changed);
+                removed.addAll(c.removed);
+                c.clear();
+            }
+            for (String name : names) {
+                Object value = session.getAttribute(name);
+                if (value == null) {
+                    removed.add(name);
+                } else {
+                    changed.put(name, value);
+                }
+            }
+        }
+        return new HttpSessionDelta(id, changed, removed);
+    }
+
+    /**
+     * 指定されたセッションの変更の記録を取り出さずに消去します。
+     *
+     * <p>他のノードから受信した{@link HttpSessionDelta}を適用したあとに呼び出すことで、
+     * 受信した変更が再び複製されることを防ぎます。
+     *
+     * @param session   セッション
+     */
+    public void clear(HttpSession session) {
+        clear(session.getId());
+    }
+
+    /**
+     * 追加された属性を変更済みとして記録します。
+     *
+     * @param event セッションと、セッションに追加された属性の名前と値を含むHttpSessionBindingEvent
+     */
+    @Override
+    public void attributeAdded(HttpSessionBindingEvent event) {
+        changesFor(event.getSession().getId()).changed(event.getName());
+    }
+
+    /**
+     * 削除された属性を記録します。
+     *
+     * @param event セッションと、セッションから削除された属性の名前と値を含むHttpSessionBindingEvent
+     */
+    @Override
+    public void attributeRemoved(HttpSessionBindingEvent event) {
+        HttpSession session = event.getSession();
+        Changes c = changes.get(session.getId());
+        if (c == null) {
+            // Containers unbind the attributes of a destroyed session after
+            // sessionDestroyed; recreating the entry would leak it
+            if (!isValid(session)) {
+                return;
+            }
+            c = changesFor(session.getId());
+        }
+        c.removed(event.getName());
+    }
+
+    /**
+     * 置き換えられた属性を変更済みとして記録します。
+     *
+     * @param event セッションと、セッションから変更された属性の名前と(古い)値を含むHttpSessionBindingEvent
+     */
+    @Override
+    public void attributeReplaced(HttpSessionBindingEvent event) {
+        changesFor(event.getSession().getId()).changed(event.getName());
+    }
+
+    /**
+     * セッションの記録を開始します。
+     *
+     * @param se 通知イベントを含むHttpSessionEvent
+     */
+    @Override
+    public void sessionCreated(HttpSessionEvent se) {
+        changesFor(se.getSession().getId());
+    }
+
+    /**
+     * 破棄されたセッションの記録を削除します。
+     *
+     * <p>このあとに通知される属性の削除は記録されません。
+     *
+     * @param se 通知イベントを含むHttpSessionEvent
+     */
+    @Override
+    public void sessionDestroyed(HttpSessionEvent se) {
+        changes.remove(se.getSession().getId());
+    }
+
+    /**
+     * 古いセッションIDの記録を新しいセッションIDに引き継ぎます。
+     *
+     * @param event 通知イベントを含むHttpSessionEvent
+     * @param oldSessionId 古いセッションID
+     */
+    @Override
+    public void sessionIdChanged(HttpSessionEvent event, String oldSessionId) {
+        Changes c = changes.remove(oldSessionId);
+        if (c != null) {
+            changes.merge(event.getSession().getId(), c, Changes::mergeFrom);
+        }
+    }
+
+    /**
+     * セッション全体が書き出される前に呼び出され、セッションの記録を消去します。
+     *
+     * @param session   永続化または複製されるセッション
+     */
+    public void beforeReplicate(HttpSession session) {
+        clear(session.getId());
+    }
+
+    /**
+     * セッション全体が読み込まれたあとに呼び出され、セッションの記録を消去して記録を開始します。
+     *
+     * @param session   読み込まれたセッション
+     */
+    public void afterActivate(HttpSession session) {
+        changesFor(session.getId()).clear();
+    }
+
+    /*
+     * Empties the entry in place rather than removing it, so that a
+     * concurrent change recorded on the same entry is not lost.
+     */
+    private void clear(String id) {
+        Changes c = changes.get(id);
+        if (c != null) {
+            c.clear();
+        }
+    }
+
+    private static boolean isValid(HttpSession session) {
+        try {
+            session.getCreationTime();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private Changes changesFor(String id) {
+        Changes c = changes.get(id);
+        if (c == null) {
+            c = changes.computeIfAbsent(id, k -> new Changes());
+        }
+        return c;
+    }
+
+
+    /*
+     * The names changed and removed since the last drain.  A name is in at
+     * most one of the two sets; the later operation wins.
+     */
+    private static final class Changes {
+        final Set<String> changed = new LinkedHashSet<>();
+        final Set<String> removed = new LinkedHashSet<>();
+
+        synchronized void changed(String name) {
+            removed.remove(name);
+            changed.add(name);
+        }
+
+        synchronized void removed(String name) {
+            changed.remove(name);
+            removed.add(name);
+        }
+
+        synchronized void clear() {
+            changed.clear();
+            removed.clear();
+        }
+
+        synchronized boolean isEmpty() {
+            return changed.isEmpty() && removed.isEmpty();
+        }
+
+        Changes mergeFrom(Changes other) {
+            synchronized (other) {
+                for (String name : other.changed) {
+                    changed(name);
+                }
+                for (String name : other.removed) {
+                    removed(name);
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * あるセッションの属性の変更のうち、まだ複製されていないものを表します。
+ *
+ * <p>変更または追加された属性の名前と値、および削除された属性の名前を保持します。
+ * セッションを複製するコンテナは、セッション全体ではなくこのオブジェクトの内容だけを他のノードに送信し、
+ * 受信したノードで{@link #applyTo}を呼び出すことができます。
+ *
+ * <p>インスタンスは不変です。ただし、属性の値そのものはコピーされません。
+ *
+ * @see HttpSessionChangeTracker#drain
+ *
+ * @since Servlet 4.0.1
+ */
+public final class HttpSessionDelta {
+
+    private final String sessionId;
+    private final Map<String, Object> changedAttributes;
+    private final Set<String> removedAttributeNames;
+
+    /**
+     * 指定された変更を表す<code>HttpSessionDelta</code>を作成します。
+     *
+     * @param sessionId             セッションのID
+     * @param changedAttributes     変更または追加された属性の名前と値
+     * @param removedAttributeNames 削除された属性の名前
+     *
+     * @throws IllegalArgumentException 引数のいずれかが<code>null</code>の場合、
+     * または同じ名前が<code>changedAttributes</code>と<code>removedAttributeNames</code>の両方に含まれる場合
+     */
+    public HttpSessionDelta(String sessionId,
+                            Map<String, Object> changedAttributes,
+                            Set<String> removedAttributeNames) {
+        if (sessionId == null || changedAttributes == null
+                || removedAttributeNames == null) {
+            throw new IllegalArgumentException("Arguments cannot be null");
+        }
+        for (String name : removedAttributeNames) {
+            if (changedAttributes.containsKey(name)) {
+                throw new IllegalArgumentException("Attribute " + name +
+                    " is both changed and removed");
+            }
+        }
+        this.sessionId = sessionId;
+        this.changedAttributes = changedAttributes.isEmpty()
+            ? Collections.<String, Object>emptyMap()
+            : Collections.unmodifiableMap(
+                new LinkedHashMap<>(changedAttributes));
+        this.removedAttributeNames = removedAttributeNames.isEmpty()
+            ? Collections.<String>emptySet()
+            : Collections.unmodifiableSet(
+                new LinkedHashSet<>(removedAttributeNames));
+    }
+
+    /**
+     * セッションのIDを返します。
+     *
+     * @return  セッションのID
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * 変更または追加された属性の名前と値を返します。
+     *
+     * @return  変更または追加された属性の変更できない<code>Map</code>
+     */
+    public Map<String, Object> getChangedAttributes() {
+        return changedAttributes;
+    }
+
+    /**
+     * 削除された属性の名前を返します。
+     *
+     * @return  削除された属性の名前の変更できない<code>Set</code>
+     */
+    public Set<String> getRemovedAttributeNames() {
+        return removedAttributeNames;
+    }
+
+    /**
+     * 変更がない場合に<code>true</code>を返します。
+     *
+     * @return  変更または追加された属性も削除された属性もない場合は<code>true</code>
+     */
+    public boolean isEmpty() {
+        return changedAttributes.isEmpty() && removedAttributeNames.isEmpty();
+    }
+
+    /**
+     * この変更を指定されたセッションに適用します。
+     *
+     * <p>変更された属性を<code>setAttribute</code>で設定し、削除された属性を<code>removeAttribute</code>で削除します。
+     * そのため、通常の属性の変更と同じようにリスナーに通知されます。
+     *
+     * @param session   変更を適用するセッション
+     *
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     */
+    public void applyTo(HttpSession session) {
+        for (Map.Entry<String, Object> e : changedAttributes.entrySet()) {
+            session.setAttribute(e.getKey(), e.getValue());
+        }
+        for (String name : removedAttributeNames) {
+            session.removeAttribute(name);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpSessionDelta[" + sessionId + ", changed=" +
+            changedAttributes.keySet() + ", removed=" + removedAttributeNames +
+            "]";
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * 階層化されたタイミングホイールを使用して、期限切れになったセッションを検出します。
+ *
+ * <p>すべてのセッションを定期的に走査する代わりに、各セッションを期限の時刻に対応するスロットに登録します。
+ * 時刻が進むとそのスロットのセッションだけが調べられるため、1回の処理にかかる時間は期限を迎えたセッションの数に比例し、
+ * セッションの総数には依存しません。
+ *
+ * <p>セッションにアクセスされたときに{@link #touch}を呼び出しても、セッションはスロット間を移動しません。
+ * 新しい期限が記録されるだけで、その処理は定数時間でロックを取得しません。
+ * 古いスロットの処理時に期限がまだ来ていなければ、そのときに正しいスロットに登録し直されます。
+ * そのため、頻繁なアクセスによる更新はまとめて処理されます。
+ *
+ * <p>期限切れになったセッションはストアから削除され、1回の{@link #advance}ごとにまとめてハンドラーに渡されます。
+ * コンテナは通常、それぞれのセッションを無効化して{@link HttpSessionListener#sessionDestroyed}を通知するハンドラーを渡し、
+ * {@link #start}でリクエストを処理するスレッドとは別のスレッドから<code>advance</code>を呼び出します。
+ * 期限の精度は{@link #getTickMillis}です。
+ *
+ * <p>セッションの最大の非アクティブ間隔やIDが変更された場合は、{@link #schedule}で登録し直す必要があります。
+ *
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @since Servlet 4.0.1
+ */
+public class HttpSessionExpirer {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // 64^5 ticks, about 34 years at one second per tick
+    private static final int LEVELS = 5;
+    // bounds how long a clock jump holds the monitor
+    private static final int MAX_TICKS_PER_LOCK = WHEEL_SIZE * WHEEL_SIZE;
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+    private static final Logger LOGGER =
+        Logger.getLogger(HttpSessionExpirer.class.getName());
+
+    private final long tickMillis;
+    private final Consumer<? super List<HttpSession>> handler;
+    private final ConcurrentMap<String, Entry> entries =
+        new ConcurrentHashMap<>();
+    private final Entry[][] wheels = new Entry[LEVELS][WHEEL_SIZE];
+    private long currentTick;
+
+    /**
+     * 新しい<code>HttpSessionExpirer</code>を作成します。
+     *
+     * @param tickMillis    タイミングホイールの1目盛りのミリ秒数
+     * @param handler       期限切れになったセッションのリストを受け取るハンドラー
+     *
+     * @throws IllegalArgumentException <code>tickMillis</code>が0以下の場合、または<code>handler</code>が<code>null</code>の場合
+     */
+    public HttpSessionExpirer(long tickMillis,
+                              Consumer<? super List<HttpSession>> handler) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Invalid tick " + tickMillis);
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+        this.tickMillis = tickMillis;
+        this.handler = handler;
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * タイミングホイールの1目盛りのミリ秒数を返します。
+     *
+     * @return 1目盛りのミリ秒数
+     */
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * セッションを登録します。
+     *
+     * <p>期限は<code>getLastAccessedTime</code>と<code>getMaxInactiveInterval</code>から求められます。
+     * 同じIDのセッションがすでに登録されている場合は置き換えます。
+     * 最大の非アクティブ間隔が0以下の場合、セッションは期限切れにならないため登録されません。
+     *
+     * @param session   登録するセッション
+     *
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     */
+    public void schedule(HttpSession session) {
+        String id = session.getId();
+        long interval = session.getMaxInactiveInterval() * 1000L;
+        long lastAccessedTime = session.getLastAccessedTime();
+        synchronized (this) {
+            Entry old = entries.remove(id);
+            if (old != null) {
+                unlink(old);
+            }
+            if (interval <= 0) {
+                return;
+            }
+            Entry entry = new Entry(session, interval,
+                deadline(lastAccessedTime, interval));
+            entries.put(id, entry);
+            insert(entry, currentTick + 1);
+        }
+    }
+
+    /**
+     * セッションにアクセスされたことを記録し、期限を延長します。
+     *
+     * <p>期限は<code>getLastAccessedTime</code>と登録時の最大の非アクティブ間隔から求められます。
+     * 登録されていないセッションの場合は何もしません。
+     * このメソッドはロックを取得せず、定数時間で完了します。
+     *
+     * @param session   アクセスされたセッション
+     *
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     */
+    public void touch(HttpSession session) {
+        Entry entry = entries.get(session.getId());
+        if (entry != null) {
+            long deadline =
+                deadline(session.getLastAccessedTime(), entry.interval);
+            if (deadline > entry.deadline) {
+                entry.deadline = deadline;
+            }
+        }
+    }
+
+    /**
+     * セッションの登録を解除します。
+     *
+     * @param id    セッションのID
+     *
+     * @return セッションが登録されていた場合は<code>true</code>
+     */
+    public synchronized boolean remove(String id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    /**
+     * 登録されているセッションの数を返します。
+     *
+     * @return 登録されているセッションの数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 指定された時刻までタイミングホイールを進め、期限切れになったセッションをハンドラーに渡します。
+     *
+     * <p>ハンドラーはロックを保持せずに、期限切れになったセッションがある場合だけ呼び出されます。
+     * 時刻が大きく進んだ場合は、一度にロックを保持したまま進める目盛りの数を制限し、
+     * 区切りごとにロックを解放してそれまでに期限切れになったセッションをハンドラーに渡します。
+     * 登録されているセッションがない場合は、目盛りを一度に進めます。
+     *
+     * <p>ハンドラーが実行時例外をスローした場合は、その例外をログに記録して処理を続けます。
+     * ハンドラーに渡されたセッションはすでに登録を解除されているため、再び渡されることはありません。
+     *
+     * @param now   現在の時刻の1970 年 1 月 1 日 00:00:00 GMT からのミリ秒数
+     */
+    public void advance(long now) {
+        long targetTick = now / tickMillis;
+        boolean done = false;
+        while (!done) {
+            List<HttpSession> expired = new ArrayList<>();
+            synchronized (this) {
+                if (entries.isEmpty()) {
+                    currentTick = Math.max(currentTick, targetTick);
+                }
+                long stopTick =
+                    Math.min(targetTick, currentTick + MAX_TICKS_PER_LOCK);
+                while (currentTick < stopTick) {
+                    currentTick++;
+                    cascade();
+                    Entry entry = detach(0, (int) (currentTick & WHEEL_MASK));
+                    while (entry != null) {
+                        Entry next = entry.next;
+                        entry.next = null;
+                        if (entry.deadline <= now) {
+                            entries.remove(entry.session.getId(), entry);
+                            expired.add(entry.session);
+                        } else {
+                            insert(entry, currentTick + 1);
+                        }
+                        entry = next;
+                    }
+                }
+                done = currentTick >= targetTick;
+            }
+            if (!expired.isEmpty()) {
+                expire(expired);
+            }
+        }
+    }
+
+    private void expire(List<HttpSession> expired) {
+        try {
+            handler.accept(expired);
+        } catch (RuntimeException e) {
+            // a failing handler must not cancel the task started by start()
+            LOGGER.log(Level.WARNING, MessageFormat.format(
+                lStrings.getString("err.session.expiry_handler"),
+                expired.size()), e);
+        }
+    }
+
+    /**
+     * 指定されたエグゼキューターで1目盛りごとに{@link #advance}を呼び出すタスクを開始します。
+     *
+     * @param executor  タスクを実行するエグゼキューター
+     *
+     * @return タスクを停止するための<code>ScheduledFuture</code>
+     */
+    public ScheduledFuture<?> start(ScheduledExecutorService executor) {
+        return executor.scheduleAtFixedRate(
+            () -> advance(System.currentTimeMillis()),
+            tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static long deadline(long lastAccessedTime, long interval) {
+        long deadline = lastAccessedTime + interval;
+        return deadline < lastAccessedTime ? Long.MAX_VALUE : deadline;
+    }
+
+    /*
+     * When the lower wheels have wrapped, moves the entries of the next
+     * slot of each higher wheel down to where they now belong.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = level * WHEEL_BITS;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            Entry entry = detach(level,
+                (int) ((currentTick >>> shift) & WHEEL_MASK));
+            while (entry != null) {
+                Entry next = entry.next;
+                entry.next = null;
+                // the slot of the current tick has not been processed yet
+                insert(entry, currentTick);
+                entry = next;
+            }
+        }
+    }
+
+    private void insert(Entry entry, long earliestTick) {
+        long tick = entry.deadline / tickMillis;
+        if (entry.deadline % tickMillis != 0 && tick < Long.MAX_VALUE) {
+            tick++;
+        }
+        if (tick < earliestTick) {
+            tick = earliestTick;
+        }
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1
+                && delta >= 1L << ((level + 1) * WHEEL_BITS)) {
+            level++;
+        }
+        if (delta >= 1L << (LEVELS * WHEEL_BITS)) {
+            // beyond the top wheel; parked and re-examined when it comes round
+            tick = currentTick + (1L << (LEVELS * WHEEL_BITS)) - 1;
+        }
+        int slot = (int) ((tick >>> (level * WHEEL_BITS)) & WHEEL_MASK);
+        Entry head = wheels[level][slot];
+        entry.level = level;
+        entry.slot = slot;
+        entry.prev = null;
+        entry.next = head;
+        if (head != null) {
+            head.prev = entry;
+        }
+        wheels[level][slot] = entry;
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.prev != null) {
+            entry.prev.next = entry.next;
+        } else if (wheels[entry.level][entry.slot] == entry) {
+            wheels[entry.level][entry.slot] = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.prev = entry.prev;
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private Entry detach(int level, int slot) {
+        Entry head = wheels[level][slot];
+        wheels[level][slot] = null;
+        for (Entry e = head; e != null; e = e.next) {
+            e.prev = null;
+        }
+        return head;
+    }
+
+
+    private static final class Entry {
+        final HttpSession session;
+        final long interval;
+        volatile long deadline;
+        Entry prev;
+        Entry next;
+        int level;
+        int slot;
+
+        Entry(HttpSession session, long interval, long deadline) {
+            this.session = session;
+            this.interval = interval;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,625 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.text.MessageFormat;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+import javax.servlet.ServletContext;
+
+/**
+ * セッションごとの推定メモリ使用量と属性の数を記録し、ウェブアプリケーション全体で集計するリスナーです。
+ *
+ * <p>属性が追加または置き換えられるたびに、値の大きさが推定関数で見積もられます。
+ * デフォルトの推定関数は{@link #shallowSize}で、値を書き出さずに型と長さからおおよそのヒープ上の大きさを見積もります。
+ * より正確な値が必要な場合は、値を書き出したバイト数を使用する{@link #serializedSize}を指定することができますが、
+ * 属性を設定するたびに値全体が書き出されることに注意してください。
+ *
+ * <p>推定関数は大きさを見積もることのできない値に対して負の値を返します。
+ * そのような値は、上限が設定されていない場合は0バイトとして記録され、上限が設定されている場合は上限を超えたものとして扱われます。
+ *
+ * <p>属性1つあたりとセッション1つあたりの上限を設定することができます。
+ * 上限を超えた場合の動作は{@link OverflowPolicy}で指定します。
+ * 上限の確認は属性が設定されたあとに{@link HttpSessionAttributeListener}として行われるため、
+ * 拒否した場合の例外が<code>setAttribute</code>の呼び出し元に伝わるかどうかはコンテナに依存します。
+ *
+ * <p>{@link #install}を呼び出すと、リスナーとして登録され、{@link #ATTRIBUTE}という名前で<code>ServletContext</code>の属性に設定されます。
+ * 管理ツールはこの属性から集計値を取得することができます。
+ *
+ * <p>このクラスはスレッドセーフです。
+ *
+ * @since Servlet 4.0.1
+ */
+public class HttpSessionMemoryMonitor implements HttpSessionAttributeListener,
+        HttpSessionListener, HttpSessionIdListener {
+
+    /**
+     * {@link #install}で<code>HttpSessionMemoryMonitor</code>が設定される<code>ServletContext</code>の属性の名前です。
+     */
+    public static final String ATTRIBUTE =
+        "javax.servlet.http.HttpSessionMemoryMonitor";
+
+    private static final String LSTRING_FILE =
+        "javax.servlet.http.LocalStrings";
+    private static ResourceBundle lStrings =
+        ResourceBundle.getBundle(LSTRING_FILE);
+
+    // rough sizes for a 64-bit JVM, used by shallowSize()
+    private static final int HEADER_SIZE = 16;
+    private static final int REFERENCE_SIZE = 8;
+    private static final int SAMPLE_SIZE = 16;
+
+    /**
+     * 上限を超えた場合の動作を表します。
+     *
+     * @since Servlet 4.0.1
+     */
+    public enum OverflowPolicy {
+        /**
+         * 変更を取り消し、<code>IllegalStateException</code>をスローします。
+         * 追加された属性は削除され、置き換えられた属性は元の値に戻されます。
+         */
+        REJECT,
+        /**
+         * 属性1つあたりの上限を超えた属性を削除します。
+         * セッション1つあたりの上限を超えた場合は、上限を下回るまで他の属性を大きい順に削除します。
+         * ただし、設定された属性だけでセッション1つあたりの上限を超える場合は、その属性を削除します。
+         * 例外はスローされません。
+         */
+        EVICT
+    }
+
+    private final ToLongFunction<Object> estimator;
+    private final ConcurrentMap<String, Usage> sessions =
+        new ConcurrentHashMap<>();
+    private final AtomicLong totalSize = new AtomicLong();
+    private final AtomicLong totalAttributeCount = new AtomicLong();
+    private volatile long maxAttributeSize = Long.MAX_VALUE;
+    private volatile long maxSessionSize = Long.MAX_VALUE;
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.REJECT;
+    // set while this thread undoes a rejected change, to avoid recursing
+    private final ThreadLocal<Boolean> undoing = new ThreadLocal<>();
+
+    /**
+     * デフォルトの推定関数を使用する<code>HttpSessionMemoryMonitor</code>を作成します。
+     */
+    public HttpSessionMemoryMonitor() {
+        this(shallowSize());
+    }
+
+    /**
+     * 指定された推定関数を使用する<code>HttpSessionMemoryMonitor</code>を作成します。
+     *
+     * @param estimator 属性の値の大きさをバイト数で見積もる関数、見積もることができない場合は負の値を返します
+     */
+    public HttpSessionMemoryMonitor(ToLongFunction<Object> estimator) {
+        if (estimator == null) {
+            throw new IllegalArgumentException("Estimator cannot be null");
+        }
+        this.estimator = estimator;
+    }
+
+    /**
+     * 値を書き出さずに、型と長さからヒープ上の大きさを見積もる推定関数を返します。
+     *
+     * <p>文字列、プリミティブのラッパー型と配列は長さから見積もられます。
+     * 配列、<code>Collection</code>と<code>Map</code>の要素は2階層までたどり、
+     * 要素の数が多い場合は先頭の一部の要素の平均から見積もられます。
+     * その他のオブジェクトはオブジェクトヘッダーの大きさだけで見積もられるため、
+     * 多くのフィールドを持つオブジェクトの大きさは実際より小さくなります。
+     *
+     * @return 推定関数
+     */
+    public static ToLongFunction<Object> shallowSize() {
+        return value -> shallowSize(value, 2);
+    }
+
+    /**
+     * 値を指定された<code>HttpSessionSerializer</code>で書き出したバイト数を返す推定関数を返します。
+     *
+     * <p>書き出せない値に対しては-1を返します。
+     *
+     * @param serializer    値を書き出す<code>HttpSessionSerializer</code>
+     *
+     * @return 推定関数
+     */
+    public static ToLongFunction<Object> serializedSize(
+            HttpSessionSerializer serializer) {
+        return value -> {
+            CountingOutputStream out = new CountingOutputStream();
+            try {
+                serializer.writeAttributes(
+                    Collections.singletonMap("", value), out);
+            } catch (IOException e) {
+                return -1;
+            }
+            return out.count;
+        };
+    }
+
+    private static long shallowSize(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return HEADER_SIZE + 24 + 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof Long || value instanceof Double) {
+            return HEADER_SIZE + 8;
+        }
+        if (value instanceof Number || value instanceof Boolean
+                || value instanceof Character) {
+            return HEADER_SIZE;
+        }
+        Class<?> type = value.getClass();
+        if (type.isArray()) {
+            Class<?> component = type.getComponentType();
+            if (!component.isPrimitive()) {
+                Object[] array = (Object[]) value;
+                return HEADER_SIZE
+                    + elementsSize(Arrays.asList(array),
+                                   array.length, depth);
+            }
+            int length = Array.getLength(value);
+            int width;
+            if (component == long.class || component == double.class) {
+                width = 8;
+            } else if (component == int.class || component == float.class) {
+                width = 4;
+            } else if (component == char.class || component == short.class) {
+                width = 2;
+            } else {
+                width = 1;
+            }
+            return HEADER_SIZE + (long) width * length;
+        }
+        if (value instanceof Collection) {
+            Collection<?> c = (Collection<?>) value;
+            return 3 * HEADER_SIZE + elementsSize(c, c.size(), depth);
+        }
+        if (value instanceof Map) {
+            Map<?, ?> m = (Map<?, ?>) value;
+            // a map entry is about the size of an object with three fields
+            return 3 * HEADER_SIZE
+                + (long) m.size() * (HEADER_SIZE + 3 * REFERENCE_SIZE)
+                + elementsSize(m.keySet(), m.size(), depth)
+                + elementsSize(m.values(), m.size(), depth);
+        }
+        return HEADER_SIZE;
+    }
+
+    /*
+     * Only the first few elements are measured, the rest is extrapolated
+     * from their average, so that a large collection stays cheap.
+     */
+    private static long elementsSize(Iterable<?> elements, int count,
+                                     int depth) {
+        long size = (long) count * REFERENCE_SIZE;
+        if (depth == 0 || count == 0) {
+            return size;
+        }
+        long sampled = 0;
+        int n = 0;
+        for (Object e : elements) {
+            if (n == SAMPLE_SIZE) {
+                break;
+            }
+            sampled += shallowSize(e, depth - 1);
+            n++;
+        }
+        if (n == 0) {
+            return size;
+        }
+        return size + sampled / n * count;
+    }
+
+    /**
+     * このモニターを指定された<code>ServletContext</code>のリスナーとして登録し、
+     * {@link #ATTRIBUTE}という名前で属性に設定します。
+     *
+     * @param context   モニターを登録する<code>ServletContext</code>
+     *
+     * @throws IllegalStateException <code>ServletContext</code>がすでに初期化されている場合
+     */
+    public void install(ServletContext context) {
+        context.addListener(this);
+        context.setAttribute(ATTRIBUTE, this);
+    }
+
+    /**
+     * 属性1つあたりの推定サイズの上限を設定します。
+     *
+     * @param maxAttributeSize  上限のバイト数、<code>Long.MAX_VALUE</code>の場合は上限なし
+     */
+    public void setMaxAttributeSize(long maxAttributeSize) {
+        this.maxAttributeSize = maxAttributeSize;
+    }
+
+    /**
+     * 属性1つあたりの推定サイズの上限を返します。
+     *
+     * @return 上限のバイト数
+     */
+    public long getMaxAttributeSize() {
+        return maxAttributeSize;
+    }
+
+    /**
+     * セッション1つあたりの推定サイズの上限を設定します。
+     *
+     * @param maxSessionSize    上限のバイト数、<code>Long.MAX_VALUE</code>の場合は上限なし
+     */
+    public void setMaxSessionSize(long maxSessionSize) {
+        this.maxSessionSize = maxSessionSize;
+    }
+
+    /**
+     * セッション1つあたりの推定サイズの上限を返します。
+     *
+     * @return 上限のバイト数
+     */
+    public long getMaxSessionSize() {
+        return maxSessionSize;
+    }
+
+    /**
+     * 上限を超えた場合の動作を設定します。デフォルトは{@link OverflowPolicy#REJECT}です。
+     *
+     * @param overflowPolicy    上限を超えた場合の動作
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Policy cannot be null");
+        }
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * 上限を超えた場合の動作を返します。
+     *
+     * @return 上限を超えた場合の動作
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * 指定されたセッションの推定サイズを返します。
+     *
+     * @param id    セッションのID
+     *
+     * @return 属性の推定サイズの合計のバイト数、記録されていないセッションの場合は0
+     */
+    public long getEstimatedSize(String id) {
+        Usage usage = sessions.get(id);
+        if (usage == null) {
+            return 0;
+        }
+        synchronized (usage) {
+            return usage.size;
+        }
+    }
+
+    /**
+     * 指定されたセッションの属性の数を返します。
+     *
+     * @param id    セッションのID
+     *
+     * @return 属性の数、記録されていないセッションの場合は0
+     */
+    public int getAttributeCount(String id) {
+        Usage usage = sessions.get(id);
+        if (usage == null) {
+            return 0;
+        }
+        synchronized (usage) {
+            return usage.attributes.size();
+        }
+    }
+
+    /**
+     * 記録されているセッションの数を返します。
+     *
+     * @return セッションの数
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * すべてのセッションの推定サイズの合計を返します。
+     *
+     * @return 推定サイズの合計のバイト数
+     */
+    public long getTotalEstimatedSize() {
+        return totalSize.get();
+    }
+
+    /**
+     * すべてのセッションの属性の数の合計を返します。
+     *
+     * @return 属性の数の合計
+     */
+    public long getTotalAttributeCount() {
+        return totalAttributeCount.get();
+    }
+
+    /**
+     * 推定サイズの大きい順に、指定された数までのセッションのIDと推定サイズを返します。
+     *
+     * @param limit 返すセッションの最大数
+     *
+     * @return セッションのIDと推定サイズの、大きい順に並んだ変更できない<code>Map</code>
+     */
+    public Map<String, Long> getLargestSessions(int limit) {
+        List<Map.Entry<String, Long>> sizes = new ArrayList<>();
+        for (Map.Entry<String, Usage> e : sessions.entrySet()) {
+            Usage usage = e.getValue();
+            long size;
+            synchronized (usage) {
+                size = usage.size;
+            }
+            sizes.add(new AbstractMap.SimpleImmutableEntry<>(
+                e.getKey(), size));
+        }
+        sizes.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        Map<String, Long> largest = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : sizes) {
+            if (largest.size() >= limit) {
+                break;
+            }
+            largest.put(e.getKey(), e.getValue());
+        }
+        return Collections.unmodifiableMap(largest);
+    }
+
+    /**
+     * セッションの記録を開始します。
+     *
+     * @param se 通知イベントを含むHttpSessionEvent
+     */
+    @Override
+    public void sessionCreated(HttpSessionEvent se) {
+        usageFor(se.getSession().getId());
+    }
+
+    /**
+     * セッションの記録を削除し、集計値から差し引きます。
+     *
+     * @param se 通知イベントを含むHttpSessionEvent
+     */
+    @Override
+    public void sessionDestroyed(HttpSessionEvent se) {
+        Usage usage = sessions.remove(se.getSession().getId());
+        if (usage != null) {
+            synchronized (usage) {
+                totalSize.addAndGet(-usage.size);
+                totalAttributeCount.addAndGet(-usage.attributes.size());
+                usage.attributes.clear();
+                usage.size = 0;
+            }
+        }
+    }
+
+    /**
+     * 古いセッションIDの記録を新しいセッションIDに引き継ぎます。
+     *
+     * @param event 通知イベントを含むHttpSessionEvent
+     * @param oldSessionId 古いセッションID
+     */
+    @Override
+    public void sessionIdChanged(HttpSessionEvent event, String oldSessionId) {
+        Usage usage = sessions.remove(oldSessionId);
+        if (usage != null) {
+            sessions.put(event.getSession().getId(), usage);
+        }
+    }
+
+    /**
+     * 追加された属性の大きさを見積もり、上限を確認します。
+     *
+     * @param event セッションと、セッションに追加された属性の名前と値を含むHttpSessionBindingEvent
+     */
+    @Override
+    public void attributeAdded(HttpSessionBindingEvent event) {
+        update(event.getSession(), event.getName(), event.getValue(), null);
+    }
+
+    /**
+     * 削除された属性の大きさを差し引きます。
+     *
+     * @param event セッションと、セッションから削除された属性の名前と値を含むHttpSessionBindingEvent
+     */
+    @Override
+    public void attributeRemoved(HttpSessionBindingEvent event) {
+        Usage usage = sessions.get(event.getSession().getId());
+        if (usage != null) {
+            synchronized (usage) {
+                Long size = usage.attributes.remove(event.getName());
+                if (size != null) {
+                    usage.size -= size;
+                    totalSize.addAndGet(-size);
+                    totalAttributeCount.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * 置き換えられた属性の大きさを見積もり直し、上限を確認します。
+     *
+     * @param event セッションと、セッションから変更された属性の名前と(古い)値を含むHttpSessionBindingEvent
+     */
+    @Override
+    public void attributeReplaced(HttpSessionBindingEvent event) {
+        HttpSession session = event.getSession();
+        String name = event.getName();
+        Object value = session.getAttribute(name);
+        if (value != null) {
+            update(session, name, value, event.getValue());
+        }
+    }
+
+    private void update(HttpSession session, String name, Object value,
+                        Object oldValue) {
+        long estimate = estimator.applyAsLong(value);
+        boolean unmeasurable = estimate < 0;
+        long size = unmeasurable ? 0 : estimate;
+        Usage usage = usageFor(session.getId());
+        long sessionSize;
+        synchronized (usage) {
+            Long previous = usage.attributes.put(name, size);
+            long delta = size - (previous == null ? 0 : previous);
+            usage.size += delta;
+            totalSize.addAndGet(delta);
+            if (previous == null) {
+                totalAttributeCount.incrementAndGet();
+            }
+            sessionSize = usage.size;
+        }
+        // a value that cannot be measured must not slip past a limit
+        boolean limited = maxAttributeSize != Long.MAX_VALUE
+            || maxSessionSize != Long.MAX_VALUE;
+        if ((size <= maxAttributeSize && sessionSize <= maxSessionSize
+                && !(unmeasurable && limited))
+                || undoing.get() != null) {
+            return;
+        }
+        if (overflowPolicy == OverflowPolicy.REJECT) {
+            undoing.set(Boolean.TRUE);
+            try {
+                if (oldValue == null) {
+                    session.removeAttribute(name);
+                } else {
+                    session.setAttribute(name, oldValue);
+                }
+            } finally {
+                undoing.remove();
+            }
+            if (unmeasurable) {
+                throw new IllegalStateException(MessageFormat.format(
+                    lStrings.getString("err.session.attribute_unmeasurable"),
+                    name));
+            }
+            if (size > maxAttributeSize) {
+                throw new IllegalStateException(MessageFormat.format(
+                    lStrings.getString("err.session.attribute_too_large"),
+                    name, size, maxAttributeSize));
+            }
+            throw new IllegalStateException(MessageFormat.format(
+                lStrings.getString("err.session.too_large"),
+                session.getId(), maxSessionSize));
+        }
+        if (unmeasurable || size > maxAttributeSize
+                || size > maxSessionSize) {
+            // evicting the others could never make room for it
+            session.removeAttribute(name);
+            return;
+        }
+        evict(session, usage, name);
+    }
+
+    /*
+     * Removes the largest attributes other than the one just set until
+     * the session is back within its limit.
+     */
+    private void evict(HttpSession session, Usage usage, String keep) {
+        List<Map.Entry<String, Long>> candidates;
+        synchronized (usage) {
+            candidates = new ArrayList<>(usage.attributes.entrySet());
+        }
+        candidates.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        for (Map.Entry<String, Long> e : candidates) {
+            synchronized (usage) {
+                if (usage.size <= maxSessionSize) {
+                    return;
+                }
+            }
+            if (!e.getKey().equals(keep)) {
+                session.removeAttribute(e.getKey());
+            }
+        }
+    }
+
+    private Usage usageFor(String id) {
+        Usage usage = sessions.get(id);
+        if (usage == null) {
+            usage = sessions.computeIfAbsent(id, k -> new Usage());
+        }
+        return usage;
+    }
+
+
+    private static final class Usage {
+        final Map<String, Long> attributes = new HashMap<>();
+        long size;
+    }
+
+
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
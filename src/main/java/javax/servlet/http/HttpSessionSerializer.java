@@ -0,0 +1,563 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * セッションの属性を、登録された{@link HttpSessionAttributeCodec}を使用してコンパクトな形式で書き出したり読み込んだりします。
+ *
+ * <p>コンテナはセッションを永続化したり複製したりする際に、<code>ObjectOutputStream</code>でセッション全体を書き出す代わりにこのクラスを使用できます。
+ * 属性の値は次の順に書き出されます。
+ * <ul>
+ * <li><code>String</code>、<code>Integer</code>、<code>Long</code>、<code>Boolean</code>、<code>Double</code>、<code>byte[]</code>は組み込みの形式で書き出されます。
+ * <li>値のクラスと{@link HttpSessionAttributeCodec#getType}が一致するコーデックが登録されている場合はそのコーデックを使用します。
+ * <li>それ以外の<code>Serializable</code>な値は、他の属性のあとにまとめて1つの<code>ObjectOutputStream</code>で書き出されます。
+ * そのため、クラスの記述子は一度だけ書き出され、複数の属性から参照される同じオブジェクトは読み込んだあとも同じインスタンスになります。
+ * </ul>
+ * 圧縮を有効にした場合、データはDeflateで圧縮されます。
+ * 読み込む側は圧縮の有無をデータから判断するため、設定を合わせる必要はありません。
+ * 圧縮されたデータを読み込んだ場合、読み込み元のストリームはデータの終わりを越えて読み進められていることがあります。
+ *
+ * <p>このクラスは{@link HttpSessionActivationListener}への通知を行いません。
+ * コンテナはセッションを書き出す前と読み込んだあとに、通常どおり<code>sessionWillPassivate</code>と<code>sessionDidActivate</code>を通知する必要があります。
+ *
+ * <p>アプリケーションはこのクラスのインスタンスを{@link #ATTRIBUTE}という名前で<code>ServletContext</code>の属性に設定することで、
+ * コンテナにコーデックを提供することができます。
+ *
+ * <p>コーデックの登録が終わったあとは、このクラスはスレッドセーフです。
+ *
+ * @see HttpSessionAttributeCodec
+ * @see HttpSessionDelta
+ *
+ * @since Servlet 4.0.1
+ */
+public class HttpSessionSerializer {
+
+    /**
+     * アプリケーションがコンテナに<code>HttpSessionSerializer</code>を提供するための<code>ServletContext</code>の属性の名前です。
+     */
+    public static final String ATTRIBUTE =
+        "javax.servlet.http.HttpSessionSerializer";
+
+    private static final int MAGIC = 0x53455353; // "SESS"
+    private static final int VERSION = 2;
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final int KIND_STRING = 1;
+    private static final int KIND_INTEGER = 2;
+    private static final int KIND_LONG = 3;
+    private static final int KIND_BOOLEAN = 4;
+    private static final int KIND_DOUBLE = 5;
+    private static final int KIND_BYTES = 6;
+    private static final int KIND_CODEC = 7;
+    private static final int KIND_SERIALIZED = 8;
+
+    // placeholder returned by readValue for KIND_SERIALIZED
+    private static final Object SERIALIZED = new Object();
+    private static final int READ_CHUNK_SIZE = 8192;
+
+    private final ConcurrentMap<Class<?>, HttpSessionAttributeCodec<?>>
+        codecs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, HttpSessionAttributeCodec<?>>
+        codecsByName = new ConcurrentHashMap<>();
+    private final ClassLoader classLoader;
+    private volatile int compressionLevel = Deflater.NO_COMPRESSION;
+
+    /**
+     * コーデックが登録されていない<code>HttpSessionSerializer</code>を作成します。
+     *
+     * @param classLoader   Javaのシリアライズで書き出された値を読み込む際にクラスを解決するクラスローダー、
+     *                      <code>null</code>の場合はスレッドのコンテキストクラスローダー
+     */
+    public HttpSessionSerializer(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * 指定されたクラスローダーからサービスプロバイダとして宣言された{@link HttpSessionAttributeCodec}をすべて登録した
+     * <code>HttpSessionSerializer</code>を作成します。
+     *
+     * @param classLoader   コーデックを検出し、Javaのシリアライズで書き出された値のクラスを解決するクラスローダー
+     *
+     * @return  作成された<code>HttpSessionSerializer</code>
+     *
+     * @throws IllegalArgumentException 同じクラスのコーデックが複数宣言されている場合
+     */
+    public static HttpSessionSerializer load(ClassLoader classLoader) {
+        HttpSessionSerializer serializer =
+            new HttpSessionSerializer(classLoader);
+        for (HttpSessionAttributeCodec<?> codec :
+                ServiceLoader.load(HttpSessionAttributeCodec.class, classLoader)) {
+            serializer.register(codec);
+        }
+        return serializer;
+    }
+
+    /**
+     * コーデックを登録します。
+     *
+     * @param codec 登録するコーデック
+     *
+     * @throws IllegalArgumentException 同じ名前のクラスのコーデックがすでに登録されている場合
+     */
+    public void register(HttpSessionAttributeCodec<?> codec) {
+        Class<?> type = codec.getType();
+        if (codecsByName.putIfAbsent(type.getName(), codec) != null) {
+            throw new IllegalArgumentException("A codec for " +
+                type.getName() + " is already registered");
+        }
+        codecs.put(type, codec);
+    }
+
+    /**
+     * 書き出すデータの圧縮レベルを設定します。
+     *
+     * @param level <code>java.util.zip.Deflater</code>の圧縮レベル、
+     *              <code>Deflater.NO_COMPRESSION</code>の場合は圧縮しない
+     *
+     * @throws IllegalArgumentException 圧縮レベルが不正な場合
+     */
+    public void setCompressionLevel(int level) {
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " +
+                level);
+        }
+        this.compressionLevel = level;
+    }
+
+    /**
+     * 書き出すデータの圧縮レベルを返します。
+     *
+     * @return  圧縮レベル
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * 指定されたセッションのすべての属性を書き出します。
+     *
+     * @param session   書き出すセッション
+     * @param out       書き出し先、このメソッドは閉じない
+     *
+     * @throws IOException 入出力エラーが発生した場合、または書き出せない値がある場合
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     */
+    public void writeSession(HttpSession session, OutputStream out)
+            throws IOException {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        Enumeration<String> names = session.getAttributeNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            Object value = session.getAttribute(name);
+            if (value != null) {
+                attributes.put(name, value);
+            }
+        }
+        writeAttributes(attributes, out);
+    }
+
+    /**
+     * 指定された属性を書き出します。
+     *
+     * @param attributes    書き出す属性の名前と値
+     * @param out           書き出し先、このメソッドは閉じない
+     *
+     * @throws IOException 入出力エラーが発生した場合、または書き出せない値がある場合
+     */
+    public void writeAttributes(Map<String, ?> attributes, OutputStream out)
+            throws IOException {
+        write(out, data -> writeMap(attributes, data));
+    }
+
+    /**
+     * {@link #writeSession}または{@link #writeAttributes}で書き出された属性を読み込みます。
+     *
+     * @param in    読み込み元、このメソッドは閉じない
+     *
+     * @return  読み込んだ属性の名前と値
+     *
+     * @throws IOException 入出力エラーが発生した場合、データが不正な場合、または値のクラスやコーデックが見つからない場合
+     */
+    public Map<String, Object> readAttributes(InputStream in)
+            throws IOException {
+        return read(in, this::readMap);
+    }
+
+    /**
+     * 指定されたセッションの変更を書き出します。
+     *
+     * @param delta 書き出す変更
+     * @param out   書き出し先、このメソッドは閉じない
+     *
+     * @throws IOException 入出力エラーが発生した場合、または書き出せない値がある場合
+     */
+    public void writeDelta(HttpSessionDelta delta, OutputStream out)
+            throws IOException {
+        write(out, data -> {
+            data.writeUTF(delta.getSessionId());
+            writeMap(delta.getChangedAttributes(), data);
+            Set<String> removed = delta.getRemovedAttributeNames();
+            data.writeInt(removed.size());
+            for (String name : removed) {
+                data.writeUTF(name);
+            }
+        });
+    }
+
+    /**
+     * {@link #writeDelta}で書き出された変更を読み込みます。
+     *
+     * @param in    読み込み元、このメソッドは閉じない
+     *
+     * @return  読み込んだ変更
+     *
+     * @throws IOException 入出力エラーが発生した場合、データが不正な場合、または値のクラスやコーデックが見つからない場合
+     */
+    public HttpSessionDelta readDelta(InputStream in) throws IOException {
+        return read(in, data -> {
+            String sessionId = data.readUTF();
+            Map<String, Object> changed = readMap(data);
+            int count = readCount(data);
+            Set<String> removed = count == 0
+                ? Collections.<String>emptySet()
+                : new LinkedHashSet<>(initialCapacity(count));
+            for (int i = 0; i < count; i++) {
+                removed.add(data.readUTF());
+            }
+            return new HttpSessionDelta(sessionId, changed, removed);
+        });
+    }
+
+    private void write(OutputStream out, Body body) throws IOException {
+        int level = compressionLevel;
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(level == Deflater.NO_COMPRESSION ? 0 : FLAG_COMPRESSED);
+        if (level == Deflater.NO_COMPRESSION) {
+            body.write(header);
+            header.flush();
+            return;
+        }
+        Deflater deflater = new Deflater(level);
+        try {
+            DeflaterOutputStream deflated =
+                new DeflaterOutputStream(out, deflater);
+            DataOutputStream data = new DataOutputStream(deflated);
+            body.write(data);
+            data.flush();
+            deflated.finish();
+            out.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private <T> T read(InputStream in, Reader<T> body) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC) {
+            throw new StreamCorruptedException("Not a serialized session");
+        }
+        int version = header.readUnsignedByte();
+        if (version != VERSION) {
+            throw new StreamCorruptedException("Unsupported version " +
+                version);
+        }
+        int flags = header.readUnsignedByte();
+        if ((flags & FLAG_COMPRESSED) == 0) {
+            return body.read(header);
+        }
+        Inflater inflater = new Inflater();
+        try {
+            return body.read(new DataInputStream(
+                new InflaterInputStream(in, inflater)));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /*
+     * Values that need Java serialization only get a KIND_SERIALIZED
+     * marker in place; they follow the other attributes, written by a
+     * single ObjectOutputStream in the same order, so that class
+     * descriptors and shared objects are written once.
+     */
+    private void writeMap(Map<String, ?> attributes, DataOutputStream data)
+            throws IOException {
+        data.writeInt(attributes.size());
+        List<Object> serialized = new ArrayList<>();
+        for (Map.Entry<String, ?> e : attributes.entrySet()) {
+            data.writeUTF(e.getKey());
+            writeValue(e.getKey(), e.getValue(), data, serialized);
+        }
+        if (!serialized.isEmpty()) {
+            // not closed, data is still in use
+            ObjectOutputStream oos = new ObjectOutputStream(data);
+            for (Object value : serialized) {
+                oos.writeObject(value);
+            }
+            oos.flush();
+        }
+    }
+
+    private Map<String, Object> readMap(DataInputStream data)
+            throws IOException {
+        int count = readCount(data);
+        Map<String, Object> attributes =
+            new LinkedHashMap<>(initialCapacity(count));
+        List<String> serialized = null;
+        for (int i = 0; i < count; i++) {
+            String name = data.readUTF();
+            Object value = readValue(data);
+            if (value == SERIALIZED) {
+                if (serialized == null) {
+                    serialized = new ArrayList<>();
+                }
+                serialized.add(name);
+            }
+            attributes.put(name, value);
+        }
+        if (serialized != null) {
+            // not closed, data is still in use; ObjectInputStream does not
+            // read past the objects written by writeMap
+            ObjectInputStream ois =
+                new LoaderObjectInputStream(data, classLoader);
+            try {
+                for (String name : serialized) {
+                    attributes.put(name, ois.readObject());
+                }
+            } catch (ClassNotFoundException e) {
+                throw new InvalidClassException(e.getMessage(),
+                    "Class not found");
+            }
+        }
+        return attributes;
+    }
+
+    // a corrupt count must not make us allocate a huge table up front
+    private static int initialCapacity(int count) {
+        return Math.min(count, 256) * 2;
+    }
+
+    private static int readCount(DataInputStream data) throws IOException {
+        int count = data.readInt();
+        if (count < 0) {
+            throw new StreamCorruptedException("Invalid count " + count);
+        }
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(String name, Object value, DataOutputStream data,
+                            List<Object> serialized)
+            throws IOException {
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            // writeUTF is limited to 65535 bytes, so write the length as int
+            byte[] bytes = ((String) value).getBytes(
+                StandardCharsets.UTF_8);
+            data.writeByte(KIND_STRING);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        } else if (type == Integer.class) {
+            data.writeByte(KIND_INTEGER);
+            data.writeInt((Integer) value);
+        } else if (type == Long.class) {
+            data.writeByte(KIND_LONG);
+            data.writeLong((Long) value);
+        } else if (type == Boolean.class) {
+            data.writeByte(KIND_BOOLEAN);
+            data.writeBoolean((Boolean) value);
+        } else if (type == Double.class) {
+            data.writeByte(KIND_DOUBLE);
+            data.writeDouble((Double) value);
+        } else if (type == byte[].class) {
+            byte[] bytes = (byte[]) value;
+            data.writeByte(KIND_BYTES);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        } else {
+            HttpSessionAttributeCodec<Object> codec =
+                (HttpSessionAttributeCodec<Object>) codecs.get(type);
+            if (codec != null) {
+                data.writeByte(KIND_CODEC);
+                data.writeUTF(type.getName());
+                codec.encode(value, data);
+            } else if (value instanceof Serializable) {
+                data.writeByte(KIND_SERIALIZED);
+                serialized.add(value);
+            } else {
+                throw new NotSerializableException(type.getName() +
+                    " (attribute " + name + ")");
+            }
+        }
+    }
+
+    private Object readValue(DataInputStream data) throws IOException {
+        int kind = data.readUnsignedByte();
+        switch (kind) {
+            case KIND_STRING:
+                return new String(readBytes(data),
+                    StandardCharsets.UTF_8);
+            case KIND_INTEGER:
+                return data.readInt();
+            case KIND_LONG:
+                return data.readLong();
+            case KIND_BOOLEAN:
+                return data.readBoolean();
+            case KIND_DOUBLE:
+                return data.readDouble();
+            case KIND_BYTES:
+                return readBytes(data);
+            case KIND_CODEC: {
+                String typeName = data.readUTF();
+                HttpSessionAttributeCodec<?> codec = codecsByName.get(typeName);
+                if (codec == null) {
+                    throw new InvalidClassException(typeName,
+                        "No codec registered");
+                }
+                return codec.decode(data);
+            }
+            case KIND_SERIALIZED:
+                // replaced by readMap
+                return SERIALIZED;
+            default:
+                throw new StreamCorruptedException("Invalid value kind " +
+                    kind);
+        }
+    }
+
+    /*
+     * The buffer only grows as data actually arrives, so that a corrupt
+     * length ends in an EOFException rather than a huge allocation.
+     */
+    private static byte[] readBytes(DataInputStream data) throws IOException {
+        int count = readCount(data);
+        byte[] bytes = new byte[Math.min(count, READ_CHUNK_SIZE)];
+        int n = 0;
+        while (n < count) {
+            if (n == bytes.length) {
+                bytes = Arrays.copyOf(bytes,
+                    (int) Math.min(count, 2L * bytes.length));
+            }
+            int read = data.read(bytes, n, bytes.length - n);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            n += read;
+        }
+        return bytes;
+    }
+
+
+    private interface Body {
+        void write(DataOutputStream data) throws IOException;
+    }
+
+
+    private interface Reader<T> {
+        T read(DataInputStream data) throws IOException;
+    }
+
+
+    /*
+     * Resolves classes of Java serialized attribute values with the
+     * application's class loader rather than the one that loaded this API.
+     */
+    private static final class LoaderObjectInputStream
+            extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        LoaderObjectInputStream(InputStream in, ClassLoader classLoader)
+                throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc)
+                throws IOException, ClassNotFoundException {
+            ClassLoader loader = classLoader != null
+                ? classLoader
+                : Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                return super.resolveClass(desc);
+            }
+            try {
+                return Class.forName(desc.getName(), false, loader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+}
@@ -0,0 +1,576 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package javax.servlet.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * セッションの属性をシリアライズしてメモリマップトファイルに保存する、セッションストアのリファレンス実装です。
+ *
+ * <p>属性はJavaヒープの外にあるファイルにマップされた領域に{@link HttpSessionSerializer}の形式で保存され、
+ * ヒープにはセッションIDから保存位置への索引だけが保持されます。
+ * そのため、非アクティブなセッションをこのストアに退避させることで、セッションが占めるヒープを減らすことができます。
+ * ストアを{@link #close}してから同じファイルで再び{@link #open}すると、保存されていたセッションを読み込むことができるため、
+ * セッションはJVMの再起動を越えて維持されます。
+ *
+ * <p>ファイルには追記だけが行われ、不要になった領域は容量が不足したときに{@link #compact}によって詰められます。
+ * レコードは書き込みが完了してから有効になるため、書き込み中にプロセスが終了しても既存のセッションは失われません。
+ * 圧縮は別のファイルに対して行われ、書き出しが完了してから元のファイルと置き換えられるため、
+ * 圧縮中に終了した場合も既存のセッションは失われません。
+ *
+ * <p>ストアはセッションのライフサイクルと統合するためのメソッドを提供します。
+ * コンテナはセッションを退避させる際に{@link #passivate}を呼び出し、属性の{@link HttpSessionActivationListener#sessionWillPassivate}を通知してから保存します。
+ * セッションを復元する際には{@link #load}で読み込んだ属性をセッションに設定したあと、
+ * {@link #notifyDidActivate}で{@link HttpSessionActivationListener#sessionDidActivate}を通知します。
+ *
+ * <p>このクラスのメソッドは同期化されています。
+ *
+ * @see HttpSessionSerializer
+ *
+ * @since Servlet 4.0.1
+ */
+public class HttpSessionStore implements Closeable {
+
+    private static final int FILE_MAGIC = 0x53535446; // "SSTF"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    // a record only becomes LIVE once it is completely written
+    private static final int RECORD_LIVE = 0x4C495645; // "LIVE"
+    private static final int RECORD_DEAD = 0x44454144; // "DEAD"
+    // marker, length, id length, creation, last access, max inactive, data
+    private static final int RECORD_FIXED_SIZE = 4 + 4 + 4 + 8 + 8 + 4 + 4;
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final HttpSessionSerializer serializer;
+    private final Map<String, Integer> index = new HashMap<>();
+    private int end;
+    private int liveBytes;
+
+    private HttpSessionStore(Path file, FileChannel channel,
+                             MappedByteBuffer buffer,
+                             HttpSessionSerializer serializer)
+            throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.serializer = serializer;
+        recover();
+    }
+
+    /**
+     * 指定されたファイルをマップしてストアを開きます。
+     *
+     * <p>ファイルが存在しない場合は作成されます。
+     * 以前にこのクラスで作成されたファイルの場合は、保存されていたセッションが索引に読み込まれます。
+     *
+     * @param file          セッションを保存するファイル
+     * @param capacity      ファイルの大きさ、既存のファイルの場合はその大きさ以上である必要がある
+     * @param serializer    属性の書き出しと読み込みに使用する<code>HttpSessionSerializer</code>
+     *
+     * @return 開かれたストア
+     *
+     * @throws IOException 入出力エラーが発生した場合、またはファイルがこのクラスで作成されたものではない場合
+     * @throws IllegalArgumentException <code>capacity</code>が小さすぎるか<code>Integer.MAX_VALUE</code>より大きい場合
+     */
+    public static HttpSessionStore open(Path file, long capacity,
+                                        HttpSessionSerializer serializer)
+            throws IOException {
+        if (capacity <= HEADER_SIZE || capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() > capacity) {
+                throw new IllegalArgumentException("Capacity " + capacity +
+                    " is smaller than the file size " + channel.size());
+            }
+            MappedByteBuffer buffer =
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new HttpSessionStore(file, channel, buffer, serializer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * セッションの属性に{@link HttpSessionActivationListener#sessionWillPassivate}を通知してから、
+     * セッションを保存します。
+     *
+     * @param session   保存するセッション
+     *
+     * @throws IOException 入出力エラーが発生した場合、書き出せない属性がある場合、またはストアの容量が不足している場合
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     */
+    public void passivate(HttpSession session) throws IOException {
+        notifyWillPassivate(session);
+        store(session);
+    }
+
+    /**
+     * セッションを保存します。
+     *
+     * <p>同じIDのセッションがすでに保存されている場合は置き換えます。
+     * リスナーには通知されません。
+     *
+     * @param session   保存するセッション
+     *
+     * @throws IOException 入出力エラーが発生した場合、書き出せない属性がある場合、またはストアの容量が不足している場合
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     */
+    public void store(HttpSession session) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        serializer.writeSession(session, data);
+        byte[] id = session.getId().getBytes(StandardCharsets.UTF_8);
+        int length = RECORD_FIXED_SIZE + id.length + data.size();
+        synchronized (this) {
+            checkOpen();
+            if (buffer.capacity() - end < length) {
+                compact();
+                if (buffer.capacity() - end < length) {
+                    throw new IOException("Session store is full");
+                }
+            }
+            int pos = end;
+            ByteBuffer b = buffer.duplicate();
+            b.position(pos + 4);
+            b.putInt(length);
+            b.putInt(id.length);
+            b.put(id);
+            b.putLong(session.getCreationTime());
+            b.putLong(session.getLastAccessedTime());
+            b.putInt(session.getMaxInactiveInterval());
+            b.putInt(data.size());
+            b.put(data.toByteArray());
+            buffer.putInt(pos, RECORD_LIVE);
+            end = pos + length;
+            Integer previous = index.put(session.getId(), pos);
+            if (previous != null) {
+                kill(previous);
+            }
+            liveBytes += length;
+        }
+    }
+
+    /**
+     * 指定されたIDで保存されているセッションを読み込みます。
+     *
+     * <p>セッションはストアから削除されません。
+     * 復元が終わったら{@link #remove}を呼び出してください。
+     *
+     * @param id    セッションのID
+     *
+     * @return 保存されていたセッション、保存されていない場合は<code>null</code>
+     *
+     * @throws IOException 入出力エラーが発生した場合、または属性を読み込めない場合
+     */
+    public synchronized StoredSession load(String id) throws IOException {
+        checkOpen();
+        Integer pos = index.get(id);
+        if (pos == null) {
+            return null;
+        }
+        ByteBuffer b = buffer.duplicate();
+        b.limit(pos + buffer.getInt(pos + 4));
+        b.position(pos + 12 + buffer.getInt(pos + 8));
+        long creationTime = b.getLong();
+        long lastAccessedTime = b.getLong();
+        int maxInactiveInterval = b.getInt();
+        int dataLength = b.getInt();
+        if (dataLength < 0 || dataLength > b.remaining()) {
+            throw new StreamCorruptedException(
+                "Invalid data length at " + pos);
+        }
+        b.limit(b.position() + dataLength);
+        Map<String, Object> attributes =
+            serializer.readAttributes(new ByteBufferInputStream(b.slice()));
+        return new StoredSession(id, creationTime, lastAccessedTime,
+            maxInactiveInterval, attributes);
+    }
+
+    /**
+     * 指定されたIDのセッションをストアから削除します。
+     *
+     * @param id    セッションのID
+     *
+     * @return セッションが保存されていた場合は<code>true</code>
+     */
+    public synchronized boolean remove(String id) {
+        checkOpen();
+        Integer pos = index.remove(id);
+        if (pos == null) {
+            return false;
+        }
+        kill(pos);
+        return true;
+    }
+
+    /**
+     * 保存されているセッションのIDを返します。
+     *
+     * @return 保存されているセッションのIDの変更できない<code>Set</code>
+     */
+    public synchronized Set<String> getSessionIds() {
+        return Collections.unmodifiableSet(new HashSet<>(index.keySet()));
+    }
+
+    /**
+     * 保存されているセッションのレコードが占めるバイト数を返します。
+     *
+     * @return 有効なレコードのバイト数
+     */
+    public synchronized long getUsedBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * ストアの容量をバイト数で返します。
+     *
+     * @return ストアの容量
+     */
+    public synchronized long getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * 削除されたり置き換えられたりしたセッションの領域を詰めます。
+     *
+     * <p>有効なレコードは同じディレクトリーの名前に<code>.compact</code>を付けたファイルに書き出され、
+     * ディスクに書き出されたあとで元のファイルをアトミックに置き換えます。
+     * そのため、圧縮中にプロセスが終了しても元のファイルは変更されません。
+     * 圧縮中は一時的にストアの容量と同じ大きさのファイルがもう1つ必要です。
+     *
+     * <p>容量が不足した場合は{@link #store}から自動的に呼び出されます。
+     *
+     * @throws IOException 入出力エラーが発生した場合、この場合ストアは圧縮前の状態のままになる
+     */
+    public synchronized void compact() throws IOException {
+        checkOpen();
+        List<Map.Entry<String, Integer>> records =
+            new ArrayList<>(index.entrySet());
+        records.sort(Map.Entry.comparingByValue());
+        Path temp = file.resolveSibling(file.getFileName() + ".compact");
+        FileChannel newChannel = FileChannel.open(temp,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer newBuffer;
+        Map<String, Integer> newIndex = new HashMap<>();
+        try {
+            newBuffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                buffer.capacity());
+            newBuffer.putInt(0, FILE_MAGIC);
+            newBuffer.putInt(4, FILE_VERSION);
+            ByteBuffer source = buffer.duplicate();
+            ByteBuffer target = newBuffer.duplicate();
+            target.position(HEADER_SIZE);
+            for (Map.Entry<String, Integer> record : records) {
+                int pos = record.getValue();
+                source.limit(pos + buffer.getInt(pos + 4));
+                source.position(pos);
+                newIndex.put(record.getKey(), target.position());
+                target.put(source);
+                source.limit(source.capacity());
+            }
+            newBuffer.force();
+            // the old file stays intact until the new one is complete
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+            end = target.position();
+        } catch (IOException | RuntimeException e) {
+            newChannel.close();
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        channel.close();
+        channel = newChannel;
+        buffer = newBuffer;
+        index.clear();
+        index.putAll(newIndex);
+    }
+
+    /**
+     * 変更をファイルに書き出してストアを閉じます。
+     *
+     * @throws IOException 入出力エラーが発生した場合
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        buffer.force();
+        index.clear();
+        channel.close();
+    }
+
+    /**
+     * セッションの属性のうち{@link HttpSessionActivationListener}を実装するものに
+     * {@link HttpSessionActivationListener#sessionWillPassivate}を通知します。
+     *
+     * @param session   退避されるセッション
+     *
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     */
+    public static void notifyWillPassivate(HttpSession session) {
+        for (HttpSessionActivationListener listener : listeners(session)) {
+            listener.sessionWillPassivate(new HttpSessionEvent(session));
+        }
+    }
+
+    /**
+     * セッションの属性のうち{@link HttpSessionActivationListener}を実装するものに
+     * {@link HttpSessionActivationListener#sessionDidActivate}を通知します。
+     *
+     * @param session   復元されたセッション
+     *
+     * @exception IllegalStateException	もしこのメソッドが無効なセッションで呼び出された場合
+     */
+    public static void notifyDidActivate(HttpSession session) {
+        for (HttpSessionActivationListener listener : listeners(session)) {
+            listener.sessionDidActivate(new HttpSessionEvent(session));
+        }
+    }
+
+    private static List<HttpSessionActivationListener> listeners(
+            HttpSession session) {
+        List<HttpSessionActivationListener> listeners = new ArrayList<>();
+        Enumeration<String> names = session.getAttributeNames();
+        while (names.hasMoreElements()) {
+            Object value = session.getAttribute(names.nextElement());
+            if (value instanceof HttpSessionActivationListener) {
+                listeners.add((HttpSessionActivationListener) value);
+            }
+        }
+        return listeners;
+    }
+
+    /*
+     * Rebuilds the index from the mapped file.  Scanning stops at the first
+     * record that was never completed; if an id appears twice because the
+     * process died between writing a record and killing its predecessor,
+     * the later record wins.
+     */
+    private void recover() throws IOException {
+        int magic = buffer.getInt(0);
+        if (magic == 0) {
+            buffer.putInt(0, FILE_MAGIC);
+            buffer.putInt(4, FILE_VERSION);
+            end = HEADER_SIZE;
+            return;
+        }
+        if (magic != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION) {
+            throw new StreamCorruptedException("Not a session store");
+        }
+        int pos = HEADER_SIZE;
+        while (pos + RECORD_FIXED_SIZE <= buffer.capacity()) {
+            int marker = buffer.getInt(pos);
+            if (marker != RECORD_LIVE && marker != RECORD_DEAD) {
+                break;
+            }
+            int length = buffer.getInt(pos + 4);
+            if (length < RECORD_FIXED_SIZE
+                    || length > buffer.capacity() - pos) {
+                throw new StreamCorruptedException(
+                    "Invalid record length at " + pos);
+            }
+            int idLength = buffer.getInt(pos + 8);
+            if (idLength < 0 || idLength > length - RECORD_FIXED_SIZE) {
+                throw new StreamCorruptedException(
+                    "Invalid id length at " + pos);
+            }
+            if (marker == RECORD_LIVE) {
+                Integer previous = index.put(readId(pos), pos);
+                if (previous != null) {
+                    kill(previous);
+                }
+                liveBytes += length;
+            }
+            pos += length;
+        }
+        end = pos;
+    }
+
+    private String readId(int pos) {
+        int idLength = buffer.getInt(pos + 8);
+        byte[] id = new byte[idLength];
+        ByteBuffer b = buffer.duplicate();
+        b.position(pos + 12);
+        b.get(id);
+        return new String(id, StandardCharsets.UTF_8);
+    }
+
+    private void kill(int pos) {
+        buffer.putInt(pos, RECORD_DEAD);
+        liveBytes -= buffer.getInt(pos + 4);
+    }
+
+    private void checkOpen() {
+        if (!channel.isOpen()) {
+            throw new IllegalStateException("Session store is closed");
+        }
+    }
+
+
+    /**
+     * {@link HttpSessionStore}から読み込まれたセッションを表します。
+     *
+     * @since Servlet 4.0.1
+     */
+    public static final class StoredSession {
+
+        private final String id;
+        private final long creationTime;
+        private final long lastAccessedTime;
+        private final int maxInactiveInterval;
+        private final Map<String, Object> attributes;
+
+        StoredSession(String id, long creationTime, long lastAccessedTime,
+                      int maxInactiveInterval, Map<String, Object> attributes) {
+            this.id = id;
+            this.creationTime = creationTime;
+            this.lastAccessedTime = lastAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.attributes = Collections.unmodifiableMap(attributes);
+        }
+
+        /**
+         * セッションのIDを返します。
+         *
+         * @return セッションのID
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * 保存された時点の{@link HttpSession#getCreationTime}を返します。
+         *
+         * @return セッションが作られた日時
+         */
+        public long getCreationTime() {
+            return creationTime;
+        }
+
+        /**
+         * 保存された時点の{@link HttpSession#getLastAccessedTime}を返します。
+         *
+         * @return セッションに最後にアクセスされた日時
+         */
+        public long getLastAccessedTime() {
+            return lastAccessedTime;
+        }
+
+        /**
+         * 保存された時点の{@link HttpSession#getMaxInactiveInterval}を返します。
+         *
+         * @return セッションの最大の非アクティブ間隔の秒数
+         */
+        public int getMaxInactiveInterval() {
+            return maxInactiveInterval;
+        }
+
+        /**
+         * 保存されていた属性の名前と値を返します。
+         *
+         * @return 属性の変更できない<code>Map</code>
+         */
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+    }
+
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
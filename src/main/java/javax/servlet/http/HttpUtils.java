@@ -61,8 +61,8 @@ package javax.servlet.http;
 import javax.servlet.ServletInputStream;
 import java.util.Hashtable;
 import java.util.ResourceBundle;
-import java.util.StringTokenizer;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @deprecated		このインターフェースはServlet API version 2.3で非推奨です。
@@ -97,43 +97,18 @@ public class HttpUtils {
      * @return		解析されたキーと値のペアで構築された <code>HashTable</code>
      *
      * @exception IllegalArgumentException クエリ文字列が不正だった
+     *
+     * @see FormDecoder#parse
      */
     public static Hashtable<String, String[]> parseQueryString(String s) {
 
-        String valArray[] = null;
-	
         if (s == null) {
             throw new IllegalArgumentException();
         }
 
-        Hashtable<String, String[]> ht = new Hashtable<String, String[]>();
-        StringBuilder sb = new StringBuilder();
-        StringTokenizer st = new StringTokenizer(s, "&");
-        while (st.hasMoreTokens()) {
-        String pair = st.nextToken();
-        int pos = pair.indexOf('=');
-        if (pos == -1) {
-            // XXX
-            // should give more detail about the illegal argument
-            throw new IllegalArgumentException();
-        }
-        String key = parseName(pair.substring(0, pos), sb);
-        String val = parseName(pair.substring(pos+1, pair.length()), sb);
-        if (ht.containsKey(key)) {
-            String oldVals[] = ht.get(key);
-            valArray = new String[oldVals.length + 1];
-            for (int i = 0; i < oldVals.length; i++) {
-                valArray[i] = oldVals[i];
-            }
-            valArray[oldVals.length] = val;
-        } else {
-            valArray = new String[1];
-            valArray[0] = val;
-        }
-        ht.put(key, valArray);
-    }
-
-	return ht;
+        FormDecoder.ParameterMap params = new FormDecoder.ParameterMap();
+        FormDecoder.parse(s, params);
+        return new Hashtable<String, String[]>(params.toMap());
     }
 
 
@@ -153,6 +128,8 @@ public class HttpUtils {
      * @return		解析されたキーと値のペアで構築された <code>HashTable</code>
      *
      * @exception IllegalArgumentException POSTメソッドによって送られたデータが不正だった
+     *
+     * @see FormDecoder#decode
      */
     public static Hashtable<String, String[]> parsePostData(int len, 
                 ServletInputStream in) {
@@ -169,76 +146,37 @@ public class HttpUtils {
 	}
 	
 	//
-	// Make sure we read the entire POSTed body.
+	// Make sure we read the entire POSTed body.  The body is decoded
+	// chunk by chunk as it is read instead of being copied into a
+	// String first.
 	//
-        byte[] postedBytes = new byte [len];
+        // XXX we shouldn't assume that the only kind of POST body
+        // is FORM data encoded using ASCII or ISO Latin/1 ... or
+        // that the body should always be treated as FORM data.
+        // FormDecoder accepts a charset for that purpose.
+        //
+        FormDecoder.Decoder decoder =
+            new FormDecoder(StandardCharsets.ISO_8859_1).newDecoder();
+        byte[] chunk = new byte[Math.min(len, FormDecoder.CHUNK_SIZE)];
         try {
-            int offset = 0;
+            int remaining = len;
        
 	    do {
-		int inputLen = in.read (postedBytes, offset, len - offset);
+		int inputLen = in.read(chunk, 0,
+                                       Math.min(remaining, chunk.length));
 		if (inputLen <= 0) {
 		    String msg = lStrings.getString("err.io.short_read");
 		    throw new IllegalArgumentException (msg);
 		}
-		offset += inputLen;
-	    } while ((len - offset) > 0);
+		decoder.update(chunk, 0, inputLen);
+		remaining -= inputLen;
+	    } while (remaining > 0);
 
 	} catch (IOException e) {
 	    throw new IllegalArgumentException(e.getMessage());
 	}
 
-        // XXX we shouldn't assume that the only kind of POST body
-        // is FORM data encoded using ASCII or ISO Latin/1 ... or
-        // that the body should always be treated as FORM data.
-        //
-
-        try {
-            String postedBody = new String(postedBytes, 0, len, "8859_1");
-            return parseQueryString(postedBody);
-        } catch (java.io.UnsupportedEncodingException e) {
-            // XXX function should accept an encoding parameter & throw this
-            // exception.  Otherwise throw something expected.
-            throw new IllegalArgumentException(e.getMessage());
-        }
-    }
-
-
-    /*
-     * Parse a name in the query string.
-     */
-    private static String parseName(String s, StringBuilder sb) {
-        sb.setLength(0);
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i); 
-            switch (c) {
-                case '+':
-                    sb.append(' ');
-                    break;
-                case '%':
-                    try {
-                        sb.append((char) Integer.parseInt(s.substring(i+1, i+3), 
-                                16));
-                        i += 2;
-                    } catch (NumberFormatException e) {
-                        // XXX
-                        // need to be more specific about illegal arg
-                        throw new IllegalArgumentException();
-                    } catch (StringIndexOutOfBoundsException e) {
-                        String rest  = s.substring(i);
-                        sb.append(rest);
-                        if (rest.length()==2)
-                            i++;
-                        }
-
-                        break;
-                default:
-                    sb.append(c);
-                    break;
-            }
-        }
-
-        return sb.toString();
+        return new Hashtable<String, String[]>(decoder.finish().toMap());
     }
 
 